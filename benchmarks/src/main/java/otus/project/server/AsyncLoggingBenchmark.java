@@ -0,0 +1,14 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.Fork;
+
+/**
+ * Журналирование в текущей конфигурации сервера: асинхронные логгеры без местоположения вызова.
+ * Политика переполнения буфера - ожидание, чтобы отброшенные события не занижали результат
+ */
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dlog4j2.configurationFile=log4j2-benchmark-async.xml",
+        "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.async.AsyncLoggerContextSelector",
+        "-Dlog4j2.asyncQueueFullPolicy=Default"})
+public class AsyncLoggingBenchmark extends ConnectionLoggingBenchmark {
+}
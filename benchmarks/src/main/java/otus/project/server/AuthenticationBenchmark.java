@@ -0,0 +1,42 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Аутентификация через DBProvider на временной БД SQLite: с кэшем ролей и id и без него
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+  @Param({"0", "10000"})
+  public int userCacheSize;
+
+  private Server server;
+  private AuthenticationProvider authenticationProvider;
+  private ClientHandler clientHandler;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServers.createServer(BenchmarkServers.createDatabase(), userCacheSize);
+    authenticationProvider = server.getAuthenticationProvider();
+    clientHandler = BenchmarkServers.createClient(server);
+  }
+
+  @Benchmark
+  public boolean authenticate() {
+    boolean isAuthenticated = authenticationProvider.authenticate(clientHandler, "admin", "admin");
+    server.unsubscribe(clientHandler);
+    return isAuthenticated;
+  }
+
+  @Benchmark
+  public boolean authenticateWithWrongPassword() {
+    return authenticationProvider.authenticate(clientHandler, "admin", "wrong");
+  }
+}
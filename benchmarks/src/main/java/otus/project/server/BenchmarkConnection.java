@@ -0,0 +1,30 @@
+package otus.project.server;
+
+/**
+ * Подключение без сети для бенчмарков: сообщение забирается из исходящей очереди сразу после постановки,
+ * как если бы поток записи мгновенно отправил его клиенту
+ */
+final class BenchmarkConnection implements ClientConnection {
+  private ClientHandler clientHandler;
+
+  void setClientHandler(ClientHandler clientHandler) {
+    this.clientHandler = clientHandler;
+  }
+
+  @Override
+  public void onMessageQueued() {
+    clientHandler.getOutboundQueue().poll();
+  }
+
+  @Override
+  public void useBinaryProtocol() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public void abort() {
+  }
+}
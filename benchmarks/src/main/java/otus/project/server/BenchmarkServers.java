@@ -0,0 +1,72 @@
+package otus.project.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Сервер и клиенты для бенчмарков: сервер не слушает порт, история и запись событий в БД отключены,
+ * БД создается во временном файле с той же схемой, что и databases/users.db
+ */
+final class BenchmarkServers {
+  private BenchmarkServers() {
+  }
+
+  static Server createServer(String databaseUrl, int userCacheSize) {
+    System.setProperty("chat.db.url", databaseUrl);
+    System.setProperty("chat.db.cache.size", String.valueOf(userCacheSize));
+    System.setProperty("chat.history.enabled", "false");
+    System.setProperty("chat.events.enabled", "false");
+    System.setProperty("chat.room.threads", "1");
+    System.setProperty("chat.outbound.overflow", "drop_new");
+    return new Server(ServerConfig.fromSystemProperties());
+  }
+
+  static ClientHandler createClient(Server server) {
+    BenchmarkConnection connection = new BenchmarkConnection();
+    ClientHandler clientHandler = new ClientHandler(server, connection);
+    connection.setClientHandler(clientHandler);
+    return clientHandler;
+  }
+
+  static ClientHandler subscribe(Server server, String username) {
+    ClientHandler clientHandler = createClient(server);
+    clientHandler.setUsername(username);
+    clientHandler.setAccountName(username);
+    if (!server.subscribe(clientHandler).join()) {
+      throw new IllegalStateException("Имя пользователя " + username + " уже занято");
+    }
+    return clientHandler;
+  }
+
+  /**
+   * Создание временной БД пользователей с ролями ADMIN и USER и пользователем admin/admin
+   *
+   * @return адрес БД для JDBC
+   */
+  static String createDatabase() throws IOException, SQLException {
+    Path file = Files.createTempFile("chat-benchmark-", ".db");
+    file.toFile().deleteOnExit();
+    String url = "jdbc:sqlite:" + file;
+    try (Connection connection = DriverManager.getConnection(url);
+         Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE roles (id INTEGER PRIMARY KEY, role TEXT NOT NULL UNIQUE)");
+      statement.execute("""
+              CREATE TABLE users (id INTEGER PRIMARY KEY, login TEXT NOT NULL UNIQUE, password TEXT NOT NULL,
+               username TEXT UNIQUE NOT NULL, date TEXT NOT NULL, isdeleted NUMERIC NOT NULL)
+              """);
+      statement.execute("""
+              CREATE TABLE roles_to_users (id_user INTEGER REFERENCES users (id) ON DELETE CASCADE NOT NULL,
+               id_role INTEGER NOT NULL REFERENCES roles (id) ON DELETE CASCADE, PRIMARY KEY (id_user, id_role))
+              """);
+      statement.execute("INSERT INTO roles (id, role) VALUES (1, 'ADMIN'), (2, 'USER')");
+      statement.execute("INSERT INTO users (id, login, password, username, date, isdeleted) VALUES (1, 'admin', 'admin', 'admin', '01.01.2024', false)");
+      statement.execute("INSERT INTO roles_to_users (id_user, id_role) VALUES (1, 1), (1, 2)");
+    }
+    return url;
+  }
+}
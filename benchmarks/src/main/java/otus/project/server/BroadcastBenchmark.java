@@ -0,0 +1,34 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка сообщения всем подписчикам общего чата
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+  @Param({"10", "1000", "10000"})
+  public int subscribers;
+
+  private Server server;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServers.createServer(BenchmarkServers.createDatabase(), 0);
+    for (int i = 0; i < subscribers; i++) {
+      BenchmarkServers.subscribe(server, "user" + i);
+    }
+  }
+
+  @Benchmark
+  public void broadcastMessage() {
+    server.broadcastMessage("user0: сообщение для всех участников чата");
+  }
+}
@@ -0,0 +1,85 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор команды: таблица команд против прежней цепочки независимых проверок startsWith
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+  private static final String[] NO_ARGUMENTS = new String[0];
+
+  @Param({"/w user3 привет, как дела?", "/ban user3", "/activelist", "/shutdown", "/unknown command"})
+  public String message;
+
+  private CommandRegistry registry;
+  private EnumSet<Role> userRoleSet;
+  private List<Role> userRoleList;
+
+  @Setup
+  public void setUp() {
+    registry = ChatCommands.createRegistry();
+    userRoleSet = EnumSet.of(Role.USER);
+    userRoleList = List.of(Role.USER);
+  }
+
+  @Benchmark
+  public String[] registry() {
+    ChatCommand command = registry.find(message);
+    if (command == null || !command.isPermitted(userRoleSet)) {
+      return null;
+    }
+    return CommandRegistry.parseArguments(command, message);
+  }
+
+  /**
+   * Цепочка проверок из ClientHandler до перехода на таблицу команд
+   */
+  @Benchmark
+  public String[] ifChain() {
+    String[] arguments = null;
+    if (message.startsWith("/w ")) {
+      arguments = message.split(" ", 3);
+    }
+    if (message.startsWith("/ban ")) {
+      arguments = isHaveRole(userRoleList, Role.ADMIN) ? message.split(" ") : null;
+    }
+    if (message.startsWith("/changenick ")) {
+      arguments = message.split(" ");
+    }
+    if (message.startsWith("/join ")) {
+      arguments = message.split(" ");
+    }
+    if (message.equals("/leave")) {
+      arguments = NO_ARGUMENTS;
+    }
+    if (message.startsWith("/activelist")) {
+      arguments = NO_ARGUMENTS;
+    }
+    if (message.startsWith("/history ")) {
+      arguments = message.split(" ");
+    }
+    if (message.startsWith("/shutdown")) {
+      arguments = isHaveRole(userRoleList, Role.ADMIN) ? NO_ARGUMENTS : null;
+    }
+    return arguments;
+  }
+
+  private static boolean isHaveRole(List<Role> userRoles, Role role) {
+    for (Role r : userRoles) {
+      if (r == role) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
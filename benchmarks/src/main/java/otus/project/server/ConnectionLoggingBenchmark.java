@@ -0,0 +1,64 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.EOFException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Затраты потока клиента на журналирование подключения: сообщение о новом клиенте, предупреждение
+ * с параметром и ошибка ввода-вывода со стеком. Каждая операция включает имитацию работы с подключением
+ * (work), чтобы частота событий была ближе к реальной и асинхронный буфер не переполнялся;
+ * baseline - та же работа без журналирования. Конфигурация задается в наследниках через параметры JVM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class ConnectionLoggingBenchmark {
+  private static final Logger logger = LogManager.getLogger(ClientHandler.class.getName());
+
+  @Param({"2000"})
+  public int work;
+
+  private String username;
+  private Exception error;
+
+  @Setup
+  public void setUp() {
+    username = "user42";
+    error = new EOFException();
+  }
+
+  @TearDown
+  public void tearDown() {
+    LogManager.shutdown();
+  }
+
+  @Benchmark
+  public void baseline() {
+    Blackhole.consumeCPU(work);
+  }
+
+  @Benchmark
+  public void connect() {
+    Blackhole.consumeCPU(work);
+    logger.info("Подключился новый клиент");
+  }
+
+  @Benchmark
+  public void queueFull() {
+    Blackhole.consumeCPU(work);
+    logger.warn("Исходящая очередь клиента {} заполнена, сообщения отбрасываются", username);
+  }
+
+  @Benchmark
+  public void ioError() {
+    Blackhole.consumeCPU(work);
+    logger.error("Ошибка при получении сообщения от клиента из входящего потока", error);
+  }
+}
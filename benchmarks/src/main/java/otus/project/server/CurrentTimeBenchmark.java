@@ -0,0 +1,34 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Форматирование отметки времени, которая добавляется к каждому сообщению
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrentTimeBenchmark {
+  private Server server;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServers.createServer(BenchmarkServers.createDatabase(), 0);
+  }
+
+  @Benchmark
+  public String getCurrentTime() {
+    return server.getCurrentTime();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public String getCurrentTimeContended() {
+    return server.getCurrentTime();
+  }
+}
@@ -0,0 +1,43 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Личное сообщение: поиск получателя по имени среди подписчиков и доставка двум клиентам
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrivateMessageBenchmark {
+  @Param({"10", "10000"})
+  public int subscribers;
+
+  private Server server;
+  private ClientHandler sender;
+  private String recipient;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = BenchmarkServers.createServer(BenchmarkServers.createDatabase(), 0);
+    for (int i = 0; i < subscribers; i++) {
+      BenchmarkServers.subscribe(server, "user" + i);
+    }
+    sender = BenchmarkServers.subscribe(server, "sender");
+    recipient = "user" + subscribers / 2;
+  }
+
+  @Benchmark
+  public void sendPrivateMessage() {
+    server.sendPrivateMessage(sender, recipient, "личное сообщение");
+  }
+
+  @Benchmark
+  public void sendPrivateMessageToAbsentUser() {
+    server.sendPrivateMessage(sender, "nobody", "личное сообщение");
+  }
+}
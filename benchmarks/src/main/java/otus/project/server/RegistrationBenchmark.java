@@ -0,0 +1,102 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Регистрация пользователя: одна транзакция JdbcUserStorage.addNewUser против прежней
+ * последовательности из проверок и двух отдельных автокоммитов
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrationBenchmark {
+  private static final String IS_LOGIN_EXISTS = "SELECT login FROM users WHERE login = ?";
+  private static final String IS_USERNAME_EXISTS = "SELECT username FROM users WHERE username = ?";
+  private static final String ADD_NEW_USER = "INSERT INTO users (login, password, username, date, isdeleted) VALUES (?, ?, ?, ?, ?)";
+  private static final String GET_USERID_BY_NAME = "SELECT id FROM users WHERE username = ?";
+  private static final String GET_ROLEID_BY_ROLENAME = "SELECT id FROM roles WHERE role = ?";
+  private static final String ADD_ROLE_TO_USER = "INSERT INTO roles_to_users (id_user, id_role) VALUES (?, ?)";
+
+  private ConnectionPool connectionPool;
+  private JdbcUserStorage userStorage;
+  private AtomicLong userNumber;
+
+  @Setup
+  public void setUp() throws Exception {
+    connectionPool = new ConnectionPool(BenchmarkServers.createDatabase(), 4, 5000L);
+    userStorage = new JdbcUserStorage(connectionPool, new MessageClock());
+    userNumber = new AtomicLong();
+  }
+
+  @TearDown
+  public void tearDown() {
+    connectionPool.close();
+  }
+
+  @Benchmark
+  public RegistrationStatus singleTransaction() {
+    long n = userNumber.incrementAndGet();
+    return userStorage.addNewUser("login" + n, "password", "user" + n);
+  }
+
+  /**
+   * Регистрация в том виде, в каком она была до объединения в транзакцию
+   */
+  @Benchmark
+  public boolean separateStatements() throws SQLException {
+    long n = userNumber.incrementAndGet();
+    String login = "login" + n;
+    String username = "user" + n;
+    if (exists(IS_LOGIN_EXISTS, login) || exists(IS_USERNAME_EXISTS, username)) {
+      return false;
+    }
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(ADD_NEW_USER);
+      statement.setString(1, login);
+      statement.setString(2, "password");
+      statement.setString(3, username);
+      statement.setString(4, new SimpleDateFormat("dd.MM.yyyy").format(new Date(System.currentTimeMillis())));
+      statement.setBoolean(5, false);
+      statement.executeUpdate();
+    }
+    int userId = findId(GET_USERID_BY_NAME, username);
+    int roleId = findId(GET_ROLEID_BY_ROLENAME, Role.USER.name());
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(ADD_ROLE_TO_USER);
+      statement.setInt(1, userId);
+      statement.setInt(2, roleId);
+      return statement.executeUpdate() > 0;
+    }
+  }
+
+  private boolean exists(String sql, String value) throws SQLException {
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(sql);
+      statement.setString(1, value);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next();
+      }
+    }
+  }
+
+  private int findId(String sql, String value) throws SQLException {
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(sql);
+      statement.setString(1, value);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() ? resultSet.getInt("id") : -1;
+      }
+    }
+  }
+}
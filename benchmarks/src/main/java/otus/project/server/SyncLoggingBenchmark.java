@@ -0,0 +1,12 @@
+package otus.project.server;
+
+import org.openjdk.jmh.annotations.Fork;
+
+/**
+ * Журналирование в прежней конфигурации: синхронный логгер и местоположение вызова в шаблоне
+ */
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dlog4j2.configurationFile=log4j2-benchmark-sync.xml",
+        "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector"})
+public class SyncLoggingBenchmark extends ConnectionLoggingBenchmark {
+}
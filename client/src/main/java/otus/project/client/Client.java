@@ -2,6 +2,9 @@ package otus.project.client;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import otus.project.common.BinaryFrame;
+import otus.project.common.BinaryProtocol;
+import otus.project.common.MessageType;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -9,59 +12,330 @@ import java.io.IOException;
 import java.net.Socket;
 import java.util.Scanner;
 
+/**
+ * Консольный клиент чата. По умолчанию при подключении предлагает серверу двоичный протокол
+ * и остается на текстовом, если сервер его не поддерживает; -Dchat.protocol=text - только текстовый протокол.
+ * При обрыве связи после входа в чат клиент переподключается и восстанавливает сессию по токену,
+ * выданному сервером, без повторной аутентификации; -Dchat.reconnect.attempts - количество попыток (5)
+ */
 public class Client {
   private static final Logger logger = LogManager.getLogger(Client.class.getName());
-  private Socket socket;
-  private DataInputStream in;
-  private DataOutputStream out;
-  private boolean isEnabled;
+  private static final String HOST = "localhost";
+  private static final int PORT = 8189;
+  private static final long RECONNECT_DELAY_MILLIS = 500L;
+  private static final long RECONNECT_MAX_DELAY_MILLIS = 8000L;
+  private static final long RESUME_TIMEOUT_MILLIS = 5000L;
+  private final Object sendLock = new Object();
+  private final int reconnectAttempts;
+  private volatile Socket socket;
+  private volatile DataInputStream in;
+  private volatile DataOutputStream out;
+  private volatile boolean isEnabled;
+  private volatile boolean isBinaryProtocol;
+  private volatile String sessionToken;
 
   public Client() throws IOException {
     Scanner scanner = new Scanner(System.in);
-    this.socket = new Socket("localhost", 8189);
+    this.reconnectAttempts = Integer.getInteger("chat.reconnect.attempts", 5);
+    connect();
+    this.isEnabled = true;
+    if (!"text".equalsIgnoreCase(System.getProperty("chat.protocol", "binary"))) {
+      negotiateBinaryProtocol();
+    }
+
+    new Thread(this::receive).start();
+    while (true) {
+      String message = scanner.nextLine();
+      if (isEnabled) {
+        send(message);
+        if (message.equals("/exit")) {
+          break;
+        }
+      } else {
+        break;
+      }
+    }
+  }
+
+  private void connect() throws IOException {
+    this.socket = new Socket(HOST, PORT);
     this.in = new DataInputStream(socket.getInputStream());
     this.out = new DataOutputStream(socket.getOutputStream());
-    this.isEnabled = true;
+  }
 
-    new Thread(() -> {
-      try {
-        while (true) {
-          String message = in.readUTF();
-          if (message.equals("/exitok")) {
-            isEnabled = false;
-            break;
+  /**
+   * Предложение серверу двоичного протокола. Если сервер ответил не подтверждением,
+   * его ответ выводится как обычное сообщение и клиент остается на текстовом протоколе
+   */
+  private void negotiateBinaryProtocol() throws IOException {
+    out.writeUTF(BinaryProtocol.HANDSHAKE);
+    String reply = in.readUTF();
+    if (reply.equals(BinaryProtocol.HANDSHAKE_OK)) {
+      isBinaryProtocol = true;
+    } else {
+      isBinaryProtocol = false;
+      System.out.println(reply);
+    }
+  }
+
+  /**
+   * Чтение входящих сообщений. При обрыве связи, если есть токен сессии, выполняется переподключение
+   */
+  private void receive() {
+    try {
+      while (true) {
+        try {
+          if (isBinaryProtocol) {
+            readFrames();
+          } else {
+            readMessages();
           }
-          if (message.startsWith("/authok")) {
-            System.out.println("Удалось успешно войти в чат под именем пользователя: " + message.split(" ")[1]);
-            continue;
+          return;
+        } catch (IOException e) {
+          if (!isEnabled || sessionToken == null) {
+            throw e;
           }
-          if (message.startsWith("/regok")) {
-            System.out.println("Удалось успешно пройти регистрацию и войти в чат под именем пользователя: " + message.split(" ")[1]);
-            continue;
+          logger.warn("Соединение с сервером потеряно: {}", e.toString());
+          if (!reconnect()) {
+            throw e;
           }
-          if (message.equals("/banok")) {
-            System.out.println("Вы заблокированы");
-            continue;
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Ошибка при получении сообщения из входящего потока", e);
+      isEnabled = false;
+    } finally {
+      disconnect();
+    }
+  }
+
+  /**
+   * Переподключение к серверу с экспоненциальной задержкой между попытками и восстановление сессии.
+   * Попытка считается удачной, когда сервер ответил на /resume: подтверждением входа или отказом,
+   * после которого подключение остается открытым для /auth
+   *
+   * @return true/false подключение восстановлено/попытки исчерпаны
+   */
+  private boolean reconnect() {
+    System.out.println("Соединение с сервером потеряно, переподключение...");
+    long delay = RECONNECT_DELAY_MILLIS;
+    for (int attempt = 1; attempt <= reconnectAttempts; attempt++) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      delay = Math.min(delay * 2, RECONNECT_MAX_DELAY_MILLIS);
+      synchronized (sendLock) {
+        disconnect();
+        try {
+          connect();
+          if (isBinaryProtocol) {
+            negotiateBinaryProtocol();
           }
-          System.out.println(message);
+          resumeSession();
+          return true;
+        } catch (IOException e) {
+          logger.warn("Попытка переподключения {} из {} не удалась: {}", attempt, reconnectAttempts, e.toString());
+        }
+      }
+    }
+    System.out.println("Не удалось переподключиться к серверу");
+    return false;
+  }
+
+  /**
+   * Восстановление сессии на новом подключении и ожидание ответа сервера не дольше RESUME_TIMEOUT_MILLIS.
+   * Токен одноразовый, новый приходит вместе с подтверждением входа. Если сервер отказал,
+   * токен сбрасывается и клиент предлагает войти командой /auth
+   */
+  private void resumeSession() throws IOException {
+    String token = sessionToken;
+    String reply;
+    socket.setSoTimeout((int) RESUME_TIMEOUT_MILLIS);
+    if (isBinaryProtocol) {
+      out.write(BinaryFrame.encode(MessageType.RESUME, token));
+      BinaryFrame frame = BinaryFrame.read(in);
+      if (frame.getType() == MessageType.AUTH_OK) {
+        saveSessionToken(frame.getFields());
+        reply = null;
+      } else {
+        reply = frame.getField(0);
+      }
+    } else {
+      out.writeUTF("/resume " + token);
+      String message = in.readUTF();
+      if (message.startsWith("/authok")) {
+        saveSessionToken(message.split(" "));
+        reply = null;
+      } else {
+        reply = message;
+      }
+    }
+    socket.setSoTimeout(0);
+    if (reply == null) {
+      System.out.println("Соединение с сервером восстановлено");
+      return;
+    }
+    sessionToken = null;
+    System.out.println(reply);
+    System.out.println("Не удалось восстановить сессию, войдите в чат командой /auth login password");
+  }
+
+  private void send(String message) throws IOException {
+    synchronized (sendLock) {
+      try {
+        if (isBinaryProtocol) {
+          out.write(toFrame(message));
+        } else {
+          out.writeUTF(message);
         }
       } catch (IOException e) {
-        logger.error("Ошибка при получении сообщения из входящего потока", e);
-      } finally {
-        disconnect();
+        if (sessionToken == null) {
+          throw e;
+        }
+        System.out.println("Нет соединения с сервером, сообщение не отправлено");
       }
-    }).start();
+    }
+  }
+
+  private void readMessages() throws IOException {
     while (true) {
-      String message = scanner.nextLine();
-      if (isEnabled) {
-        out.writeUTF(message);
-        if (message.equals("/exit")) {
-          break;
-        }
-      } else {
+      String message = in.readUTF();
+      if (message.equals("/exitok")) {
+        isEnabled = false;
         break;
       }
+      if (message.startsWith("/authok")) {
+        String[] elements = message.split(" ");
+        saveSessionToken(elements);
+        System.out.println("Удалось успешно войти в чат под именем пользователя: " + elements[1]);
+        continue;
+      }
+      if (message.startsWith("/regok")) {
+        String[] elements = message.split(" ");
+        saveSessionToken(elements);
+        System.out.println("Удалось успешно пройти регистрацию и войти в чат под именем пользователя: " + elements[1]);
+        continue;
+      }
+      if (message.startsWith("/presence ")) {
+        String[] elements = message.split(" ");
+        printPresence(elements[1], elements[2], elements.length > 3 ? elements[3] : null,
+                elements.length > 4 ? elements[4] : null);
+        continue;
+      }
+      if (message.equals("/banok")) {
+        sessionToken = null;
+        System.out.println("Вы заблокированы");
+        continue;
+      }
+      System.out.println(message);
+    }
+  }
+
+  private void readFrames() throws IOException {
+    while (true) {
+      BinaryFrame frame = BinaryFrame.read(in);
+      switch (frame.getType()) {
+        case MessageType.TEXT -> System.out.println(frame.getField(0));
+        case MessageType.AUTH_OK -> {
+          saveSessionToken(frame.getFields());
+          System.out.println("Удалось успешно войти в чат под именем пользователя: " + frame.getField(0));
+        }
+        case MessageType.REG_OK -> {
+          saveSessionToken(frame.getFields());
+          System.out.println("Удалось успешно пройти регистрацию и войти в чат под именем пользователя: " + frame.getField(0));
+        }
+        case MessageType.PRESENCE_DELTA -> printPresence(frame.getField(0), frame.getField(1),
+                frame.getFieldCount() > 2 ? frame.getField(2) : null, frame.getFieldCount() > 3 ? frame.getField(3) : null);
+        case MessageType.BAN_OK -> {
+          sessionToken = null;
+          System.out.println("Вы заблокированы");
+        }
+        case MessageType.EXIT_OK -> {
+          isEnabled = false;
+          return;
+        }
+        default -> logger.warn("Неизвестный тип сообщения от сервера: {}", frame.getType());
+      }
+    }
+  }
+
+  /**
+   * Вывод изменения списка пользователей, на которое подписан клиент командой /presence on
+   *
+   * @param version   версия списка
+   * @param operation операция: + вход, - выход, ~ смена имени, = подписка
+   * @param username  имя пользователя или null
+   * @param newName   новое имя при смене имени или null
+   */
+  private void printPresence(String version, String operation, String username, String newName) {
+    switch (operation) {
+      case "=" -> System.out.println("Подписка на изменения списка пользователей включена, версия " + version);
+      case "+" -> System.out.println("[" + version + "] В чате: " + username);
+      case "-" -> System.out.println("[" + version + "] Вышел из чата: " + username);
+      case "~" -> System.out.println("[" + version + "] " + username + " сменил имя на " + newName);
+      default -> logger.warn("Неизвестное изменение списка пользователей: {}", operation);
+    }
+  }
+
+  /**
+   * Сохранение токена сессии из подтверждения входа. Сервер без поддержки сессий токен не присылает
+   *
+   * @param elements команда и аргументы (текстовый протокол) или поля кадра (двоичный протокол)
+   */
+  private void saveSessionToken(String[] elements) {
+    int index = isBinaryProtocol ? 1 : 2;
+    sessionToken = elements.length > index ? elements[index] : null;
+  }
+
+  /**
+   * Преобразование введенной строки в кадр двоичного протокола. Команды с неверным
+   * количеством аргументов отправляются как COMMAND, и сервер отвечает подсказкой по формату
+   *
+   * @param message введенная строка
+   * @return закодированный кадр
+   */
+  private byte[] toFrame(String message) {
+    if (!message.startsWith("/")) {
+      return BinaryFrame.encode(MessageType.MESSAGE, message);
+    }
+    if (message.startsWith("/w ")) {
+      String[] elements = message.split(" ", 3);
+      if (elements.length == 3) {
+        return BinaryFrame.encode(MessageType.PRIVATE, elements[1], elements[2]);
+      }
     }
+    String[] elements = message.split(" ");
+    return switch (elements[0]) {
+      case "/auth" -> elements.length == 3
+              ? BinaryFrame.encode(MessageType.AUTH, elements[1], elements[2])
+              : BinaryFrame.encode(MessageType.COMMAND, message);
+      case "/register" -> elements.length == 4
+              ? BinaryFrame.encode(MessageType.REGISTER, elements[1], elements[2], elements[3])
+              : BinaryFrame.encode(MessageType.COMMAND, message);
+      case "/resume" -> toFrame(MessageType.RESUME, elements, message);
+      case "/ban" -> toFrame(MessageType.BAN, elements, message);
+      case "/changenick" -> toFrame(MessageType.CHANGE_NICK, elements, message);
+      case "/history" -> toFrame(MessageType.HISTORY, elements, message);
+      case "/join" -> toFrame(MessageType.JOIN, elements, message);
+      case "/activelist" -> elements.length == 2
+              ? BinaryFrame.encode(MessageType.ACTIVE_LIST, elements[1])
+              : BinaryFrame.encode(MessageType.ACTIVE_LIST);
+      case "/presence" -> toFrame(MessageType.PRESENCE, elements, message);
+      case "/leave" -> BinaryFrame.encode(MessageType.LEAVE);
+      case "/shutdown" -> BinaryFrame.encode(MessageType.SHUTDOWN);
+      case "/metrics" -> BinaryFrame.encode(MessageType.METRICS);
+      case "/exit" -> BinaryFrame.encode(MessageType.EXIT);
+      default -> BinaryFrame.encode(MessageType.COMMAND, message);
+    };
+  }
+
+  private byte[] toFrame(byte type, String[] elements, String message) {
+    return elements.length == 2
+            ? BinaryFrame.encode(type, elements[1])
+            : BinaryFrame.encode(MessageType.COMMAND, message);
   }
 
   private void disconnect() {
@@ -0,0 +1,172 @@
+package otus.project.client;
+
+import otus.project.common.BinaryFrame;
+import otus.project.common.BinaryProtocol;
+import otus.project.common.MessageType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Одно подключение генератора нагрузки. Ответы сервера в двоичном протоколе приводятся
+ * к виду текстового протокола (/authok name, /regok name, /exitok), чтобы разбирать их одинаково
+ */
+class LoadClient {
+  private final int index;
+  private final String username;
+  private final boolean isBinaryProtocol;
+  private Socket socket;
+  private DataInputStream in;
+  private DataOutputStream out;
+  private volatile boolean isClosing;
+  private String lastError;
+
+  LoadClient(int index, String username, boolean isBinaryProtocol) {
+    this.index = index;
+    this.username = username;
+    this.isBinaryProtocol = isBinaryProtocol;
+  }
+
+  int getIndex() {
+    return index;
+  }
+
+  String getUsername() {
+    return username;
+  }
+
+  /**
+   * Последний ответ сервера, из-за которого не удалось войти в чат
+   */
+  String getLastError() {
+    return lastError;
+  }
+
+  void connect(String host, int port, int timeoutMillis) throws IOException {
+    socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    socket.setSoTimeout(timeoutMillis);
+    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    if (isBinaryProtocol) {
+      out.writeUTF(BinaryProtocol.HANDSHAKE);
+      out.flush();
+      String reply = in.readUTF();
+      if (!reply.equals(BinaryProtocol.HANDSHAKE_OK)) {
+        throw new IOException("Сервер не поддерживает двоичный протокол: " + reply);
+      }
+    }
+  }
+
+  /**
+   * Вход в чат: аутентификация, а если пользователя еще нет - регистрация с логином, равным имени пользователя
+   *
+   * @param password пароль
+   * @return true/false успех/неудача
+   */
+  boolean login(String password) throws IOException {
+    send(MessageType.AUTH, "/auth " + username + " " + password, username, password);
+    if (awaitLogin()) {
+      return true;
+    }
+    send(MessageType.REGISTER, "/register " + username + " " + password + " " + username, username, password, username);
+    return awaitLogin();
+  }
+
+  /**
+   * Ожидание подтверждения входа. Сообщения чата с отметкой времени, которые могут прийти раньше подтверждения,
+   * и сообщение о добавлении роли при регистрации пропускаются, любой другой ответ сервера считается отказом
+   */
+  private boolean awaitLogin() throws IOException {
+    while (true) {
+      String message = readMessage();
+      if (message.startsWith("/authok") || message.startsWith("/regok")) {
+        socket.setSoTimeout(0);
+        return true;
+      }
+      if (message.startsWith("(") || message.startsWith("Для пользователя")) {
+        continue;
+      }
+      lastError = message;
+      return false;
+    }
+  }
+
+  void sendBroadcast(String text) throws IOException {
+    send(MessageType.MESSAGE, text, text);
+  }
+
+  void sendPrivateMessage(String recipient, String text) throws IOException {
+    send(MessageType.PRIVATE, "/w " + recipient + " " + text, recipient, text);
+  }
+
+  /**
+   * Чтение сообщений сервера до /exitok или разрыва соединения
+   *
+   * @param statistics статистика, в которую передаются полученные сообщения
+   */
+  void readMessages(LoadStatistics statistics) {
+    try {
+      while (true) {
+        String message = readMessage();
+        if (message.equals("/exitok")) {
+          return;
+        }
+        statistics.onReceived(index, message);
+      }
+    } catch (IOException e) {
+      if (!isClosing) {
+        statistics.onDisconnected();
+      }
+    }
+  }
+
+  /**
+   * Выход из чата и закрытие сокета. Вызывается и для клиента, не прошедшего подключение или вход:
+   * сокет мог быть не открыт или открыт без потоков
+   */
+  void close() {
+    isClosing = true;
+    if (socket == null) {
+      return;
+    }
+    if (out != null) {
+      try {
+        send(MessageType.EXIT, "/exit");
+      } catch (IOException ignored) {
+      }
+    }
+    try {
+      socket.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  private synchronized void send(byte type, String message, String... fields) throws IOException {
+    if (isBinaryProtocol) {
+      out.write(BinaryFrame.encode(type, fields));
+    } else {
+      out.writeUTF(message);
+    }
+    out.flush();
+  }
+
+  private String readMessage() throws IOException {
+    if (!isBinaryProtocol) {
+      return in.readUTF();
+    }
+    BinaryFrame frame = BinaryFrame.read(in);
+    return switch (frame.getType()) {
+      case MessageType.TEXT -> frame.getField(0);
+      case MessageType.AUTH_OK -> "/authok " + frame.getField(0);
+      case MessageType.REG_OK -> "/regok " + frame.getField(0);
+      case MessageType.BAN_OK -> "/banok";
+      case MessageType.EXIT_OK -> "/exitok";
+      default -> "";
+    };
+  }
+}
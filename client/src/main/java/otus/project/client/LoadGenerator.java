@@ -0,0 +1,165 @@
+package otus.project.client;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки без консоли: открывает заданное количество подключений, входит в чат
+ * (при необходимости регистрируя пользователей) и с заданной частотой отправляет сообщения в общий чат
+ * и личные сообщения случайно выбранным клиентам. Каждое подключение читает сообщения в своем виртуальном потоке.
+ * Печатает количество сообщений в секунду и процентили задержки доставки
+ */
+public class LoadGenerator {
+  private static final Logger logger = LogManager.getLogger(LoadGenerator.class.getName());
+  private final LoadGeneratorConfig config;
+  private final LoadStatistics statistics;
+  private final List<LoadClient> clients;
+  private volatile boolean isRunning;
+
+  public LoadGenerator(LoadGeneratorConfig config) {
+    this.config = config;
+    this.statistics = new LoadStatistics();
+    this.clients = new ArrayList<>();
+  }
+
+  public void run() throws InterruptedException {
+    connectClients();
+    if (clients.size() < 2) {
+      System.out.println("Для нагрузки нужно хотя бы два клиента в чате, вошло: " + clients.size());
+      closeClients();
+      return;
+    }
+    for (LoadClient client : clients) {
+      Thread.ofVirtual().name("load-reader-" + client.getIndex()).start(() -> client.readMessages(statistics));
+    }
+    System.out.printf("В чате %d клиентов, отправка %.1f сообщений/с в чат и %.1f личных сообщений/с в течение %d с%n",
+            clients.size(), config.getBroadcastRate(), config.getPrivateRate(), config.getDurationSeconds());
+
+    isRunning = true;
+    statistics.start();
+    long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+    List<Thread> senders = new ArrayList<>();
+    if (config.getBroadcastRate() > 0) {
+      senders.add(startSender(LoadStatistics.BROADCAST, config.getBroadcastRate(), endNanos));
+    }
+    if (config.getPrivateRate() > 0) {
+      senders.add(startSender(LoadStatistics.PRIVATE, config.getPrivateRate(), endNanos));
+    }
+    long reportNanos = TimeUnit.SECONDS.toNanos(Math.max(1L, config.getReportSeconds()));
+    long nextReport = System.nanoTime() + reportNanos;
+    while (nextReport < endNanos) {
+      LockSupport.parkNanos(nextReport - System.nanoTime());
+      statistics.printInterval(System.out);
+      nextReport += reportNanos;
+    }
+    for (Thread sender : senders) {
+      sender.join();
+    }
+    isRunning = false;
+    Thread.sleep(config.getDrainMillis());
+    statistics.printSummary(System.out, clients.size());
+    closeClients();
+  }
+
+  /**
+   * Подключение и вход в чат не более load.login.concurrency клиентов одновременно
+   */
+  private void connectClients() throws InterruptedException {
+    Semaphore permits = new Semaphore(config.getLoginConcurrency());
+    AtomicInteger failures = new AtomicInteger();
+    AtomicReference<String> lastFailure = new AtomicReference<>("");
+    long start = System.nanoTime();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < config.getClients(); i++) {
+        permits.acquire();
+        LoadClient client = new LoadClient(i, config.getUserPrefix() + i, config.isBinaryProtocol());
+        executor.execute(() -> {
+          try {
+            client.connect(config.getHost(), config.getPort(), config.getLoginTimeoutMillis());
+            if (client.login(config.getPassword())) {
+              synchronized (clients) {
+                clients.add(client);
+              }
+            } else {
+              failures.incrementAndGet();
+              lastFailure.set("Клиент " + client.getUsername() + " не вошел в чат: " + client.getLastError());
+              logger.warn(lastFailure.get());
+              client.close();
+            }
+          } catch (IOException e) {
+            failures.incrementAndGet();
+            lastFailure.set("Клиент " + client.getUsername() + " не подключился: " + e.getMessage());
+            logger.warn(lastFailure.get());
+            client.close();
+          } finally {
+            permits.release();
+          }
+        });
+      }
+    }
+    System.out.printf("Подключено %d клиентов за %.1f с, не удалось %d%n",
+            clients.size(), (System.nanoTime() - start) / 1e9, failures.get());
+    if (failures.get() > 0) {
+      System.out.println(lastFailure.get());
+    }
+  }
+
+  /**
+   * Поток отправки сообщений одного типа с постоянной частотой. Момент отправки каждого сообщения
+   * планируется заранее, и отставание от расписания попадает в задержку доставки
+   */
+  private Thread startSender(char type, double rate, long endNanos) {
+    long intervalNanos = Math.max(1L, (long) (1_000_000_000L / rate));
+    Thread thread = new Thread(() -> {
+      long scheduled = System.nanoTime();
+      while (isRunning && scheduled < endNanos) {
+        long delay = scheduled - System.nanoTime();
+        if (delay > 0) {
+          LockSupport.parkNanos(delay);
+        }
+        send(type, scheduled);
+        scheduled += intervalNanos;
+      }
+    }, "load-sender-" + type);
+    thread.start();
+    return thread;
+  }
+
+  private void send(char type, long scheduledNanos) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    LoadClient sender = clients.get(random.nextInt(clients.size()));
+    String text = LoadStatistics.mark(type, sender.getIndex(), scheduledNanos);
+    try {
+      if (type == LoadStatistics.BROADCAST) {
+        sender.sendBroadcast(text);
+      } else {
+        LoadClient recipient = clients.get(random.nextInt(clients.size()));
+        while (recipient == sender) {
+          recipient = clients.get(random.nextInt(clients.size()));
+        }
+        sender.sendPrivateMessage(recipient.getUsername(), text);
+      }
+      statistics.onSent(type);
+    } catch (IOException e) {
+      statistics.onSendError();
+    }
+  }
+
+  private void closeClients() {
+    for (LoadClient client : clients) {
+      client.close();
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package otus.project.client;
+
+public class LoadGeneratorApplication {
+  public static void main(String[] args) throws InterruptedException {
+    new LoadGenerator(LoadGeneratorConfig.fromSystemProperties()).run();
+  }
+}
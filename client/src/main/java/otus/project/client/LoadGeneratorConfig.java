@@ -0,0 +1,107 @@
+package otus.project.client;
+
+/**
+ * Параметры генератора нагрузки. Значения берутся из системных свойств (-Dload.*)
+ * <ul>
+ *   <li>load.host - адрес сервера (localhost)</li>
+ *   <li>load.port - порт сервера (8189)</li>
+ *   <li>load.protocol - протокол: binary/text (binary)</li>
+ *   <li>load.clients - количество подключений (1000)</li>
+ *   <li>load.login.concurrency - количество одновременных подключений и входов в чат (64)</li>
+ *   <li>load.login.timeout.ms - ожидание ответа на /auth и /register, мс (10000)</li>
+ *   <li>load.user.prefix - префикс логина и имени пользователя, к нему добавляется номер клиента (load)</li>
+ *   <li>load.password - пароль всех пользователей (password)</li>
+ *   <li>load.broadcast.rate - сообщений в общий чат в секунду от всех клиентов вместе (10)</li>
+ *   <li>load.private.rate - личных сообщений /w в секунду от всех клиентов вместе (100)</li>
+ *   <li>load.duration.s - длительность отправки сообщений, секунд (60)</li>
+ *   <li>load.report.s - интервал промежуточного отчета, секунд (5)</li>
+ *   <li>load.drain.ms - ожидание доставки последних сообщений перед итоговым отчетом, мс (2000)</li>
+ * </ul>
+ */
+public class LoadGeneratorConfig {
+  private final String host;
+  private final int port;
+  private final boolean isBinaryProtocol;
+  private final int clients;
+  private final int loginConcurrency;
+  private final int loginTimeoutMillis;
+  private final String userPrefix;
+  private final String password;
+  private final double broadcastRate;
+  private final double privateRate;
+  private final long durationSeconds;
+  private final long reportSeconds;
+  private final long drainMillis;
+
+  private LoadGeneratorConfig() {
+    this.host = System.getProperty("load.host", "localhost");
+    this.port = Integer.getInteger("load.port", 8189);
+    this.isBinaryProtocol = !"text".equalsIgnoreCase(System.getProperty("load.protocol", "binary"));
+    this.clients = Integer.getInteger("load.clients", 1000);
+    this.loginConcurrency = Integer.getInteger("load.login.concurrency", 64);
+    this.loginTimeoutMillis = Integer.getInteger("load.login.timeout.ms", 10000);
+    this.userPrefix = System.getProperty("load.user.prefix", "load");
+    this.password = System.getProperty("load.password", "password");
+    this.broadcastRate = Double.parseDouble(System.getProperty("load.broadcast.rate", "10"));
+    this.privateRate = Double.parseDouble(System.getProperty("load.private.rate", "100"));
+    this.durationSeconds = Long.getLong("load.duration.s", 60L);
+    this.reportSeconds = Long.getLong("load.report.s", 5L);
+    this.drainMillis = Long.getLong("load.drain.ms", 2000L);
+  }
+
+  public static LoadGeneratorConfig fromSystemProperties() {
+    return new LoadGeneratorConfig();
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public boolean isBinaryProtocol() {
+    return isBinaryProtocol;
+  }
+
+  public int getClients() {
+    return clients;
+  }
+
+  public int getLoginConcurrency() {
+    return loginConcurrency;
+  }
+
+  public int getLoginTimeoutMillis() {
+    return loginTimeoutMillis;
+  }
+
+  public String getUserPrefix() {
+    return userPrefix;
+  }
+
+  public String getPassword() {
+    return password;
+  }
+
+  public double getBroadcastRate() {
+    return broadcastRate;
+  }
+
+  public double getPrivateRate() {
+    return privateRate;
+  }
+
+  public long getDurationSeconds() {
+    return durationSeconds;
+  }
+
+  public long getReportSeconds() {
+    return reportSeconds;
+  }
+
+  public long getDrainMillis() {
+    return drainMillis;
+  }
+}
@@ -0,0 +1,159 @@
+package otus.project.client;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики и гистограммы задержки доставки генератора нагрузки.
+ * Каждое сообщение несет метку "#lg тип отправитель время", где время - запланированный момент отправки
+ * по System.nanoTime, поэтому задержка включает и ожидание отправки, если отправитель не успевает за заданной частотой
+ */
+class LoadStatistics {
+  static final String MARKER = "#lg ";
+  static final char BROADCAST = 'b';
+  static final char PRIVATE = 'p';
+  private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+  private final Recorder broadcastRecorder = new Recorder(MAX_LATENCY_MICROS, 3);
+  private final Recorder privateRecorder = new Recorder(MAX_LATENCY_MICROS, 3);
+  private final Histogram broadcastTotal = new Histogram(MAX_LATENCY_MICROS, 3);
+  private final Histogram privateTotal = new Histogram(MAX_LATENCY_MICROS, 3);
+  private final LongAdder broadcastSent = new LongAdder();
+  private final LongAdder privateSent = new LongAdder();
+  private final LongAdder sendErrors = new LongAdder();
+  private final LongAdder disconnects = new LongAdder();
+  private Histogram broadcastInterval;
+  private Histogram privateInterval;
+  private long intervalBroadcastSent;
+  private long intervalPrivateSent;
+  private long intervalStartNanos;
+  private long startNanos;
+
+  static String mark(char type, int sender, long scheduledNanos) {
+    return MARKER + type + " " + sender + " " + scheduledNanos;
+  }
+
+  void start() {
+    startNanos = System.nanoTime();
+    intervalStartNanos = startNanos;
+    broadcastRecorder.reset();
+    privateRecorder.reset();
+  }
+
+  void onSent(char type) {
+    if (type == BROADCAST) {
+      broadcastSent.increment();
+    } else {
+      privateSent.increment();
+    }
+  }
+
+  void onSendError() {
+    sendErrors.increment();
+  }
+
+  void onDisconnected() {
+    disconnects.increment();
+  }
+
+  /**
+   * Учет полученного сообщения. Сообщения без метки и копии собственных сообщений отправителя не учитываются
+   *
+   * @param receiver номер клиента-получателя
+   * @param message  текст сообщения
+   */
+  void onReceived(int receiver, String message) {
+    long receivedNanos = System.nanoTime();
+    int start = message.indexOf(MARKER);
+    if (start < 0 || start + MARKER.length() + 2 >= message.length()) {
+      return;
+    }
+    char type = message.charAt(start + MARKER.length());
+    int senderStart = start + MARKER.length() + 2;
+    int senderEnd = message.indexOf(' ', senderStart);
+    if (senderEnd < 0) {
+      return;
+    }
+    int sender;
+    long scheduledNanos;
+    try {
+      sender = Integer.parseInt(message, senderStart, senderEnd, 10);
+      int timeEnd = message.indexOf(' ', senderEnd + 1);
+      scheduledNanos = Long.parseLong(message, senderEnd + 1, timeEnd < 0 ? message.length() : timeEnd, 10);
+    } catch (NumberFormatException e) {
+      return;
+    }
+    if (sender == receiver) {
+      return;
+    }
+    long latencyMicros = Math.min(Math.max(0L, (receivedNanos - scheduledNanos) / 1000L), MAX_LATENCY_MICROS);
+    if (type == BROADCAST) {
+      broadcastRecorder.recordValue(latencyMicros);
+    } else if (type == PRIVATE) {
+      privateRecorder.recordValue(latencyMicros);
+    }
+  }
+
+  /**
+   * Промежуточный отчет за время с предыдущего отчета
+   */
+  void printInterval(PrintStream out) {
+    long now = System.nanoTime();
+    broadcastInterval = broadcastRecorder.getIntervalHistogram(broadcastInterval);
+    privateInterval = privateRecorder.getIntervalHistogram(privateInterval);
+    broadcastTotal.add(broadcastInterval);
+    privateTotal.add(privateInterval);
+    long broadcastSentTotal = broadcastSent.sum();
+    long privateSentTotal = privateSent.sum();
+    double seconds = (now - intervalStartNanos) / 1e9;
+    out.printf("[%5.0fs] отправлено %.0f/с в чат, %.0f/с личных; доставлено %.0f/с; ошибок %d, разрывов %d%n",
+            (now - startNanos) / 1e9,
+            (broadcastSentTotal - intervalBroadcastSent) / seconds,
+            (privateSentTotal - intervalPrivateSent) / seconds,
+            (broadcastInterval.getTotalCount() + privateInterval.getTotalCount()) / seconds,
+            sendErrors.sum(), disconnects.sum());
+    printLatency(out, "  чат   ", broadcastInterval);
+    printLatency(out, "  личные", privateInterval);
+    intervalBroadcastSent = broadcastSentTotal;
+    intervalPrivateSent = privateSentTotal;
+    intervalStartNanos = now;
+  }
+
+  /**
+   * Итоговый отчет за все время отправки
+   *
+   * @param clients количество клиентов в чате, по нему считается ожидаемое количество доставок сообщения в чат
+   */
+  void printSummary(PrintStream out, int clients) {
+    printInterval(out);
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    long expectedBroadcasts = broadcastSent.sum() * (clients - 1);
+    long delivered = broadcastTotal.getTotalCount() + privateTotal.getTotalCount();
+    out.println("Итог:");
+    out.printf("  отправлено в чат %d, личных %d, ошибок отправки %d, разрывов %d%n",
+            broadcastSent.sum(), privateSent.sum(), sendErrors.sum(), disconnects.sum());
+    out.printf("  доставлено в чат %d из %d, личных %d из %d, в среднем %.0f сообщений/с%n",
+            broadcastTotal.getTotalCount(), expectedBroadcasts, privateTotal.getTotalCount(), privateSent.sum(),
+            delivered / seconds);
+    printLatency(out, "  чат   ", broadcastTotal);
+    printLatency(out, "  личные", privateTotal);
+  }
+
+  private static void printLatency(PrintStream out, String title, Histogram histogram) {
+    if (histogram.getTotalCount() == 0) {
+      out.println(title + ": нет доставленных сообщений");
+      return;
+    }
+    out.printf("%s: задержка, мс p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f  (%d)%n", title,
+            histogram.getValueAtPercentile(50) / 1000.0,
+            histogram.getValueAtPercentile(90) / 1000.0,
+            histogram.getValueAtPercentile(99) / 1000.0,
+            histogram.getValueAtPercentile(99.9) / 1000.0,
+            histogram.getMaxValue() / 1000.0,
+            histogram.getTotalCount());
+  }
+}
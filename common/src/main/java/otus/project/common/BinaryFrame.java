@@ -0,0 +1,169 @@
+package otus.project.common;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Кадр двоичного протокола: заголовок (тип, флаги, длина) и данные.
+ * Данные - последовательность строковых полей, каждое в виде 2 байт длины и UTF-8,
+ * так что аргументы команды читаются по позициям без разбора строки
+ */
+public final class BinaryFrame {
+  private static final String[] NO_FIELDS = new String[0];
+  private final byte type;
+  private final byte flags;
+  private final String[] fields;
+
+  public BinaryFrame(byte type, byte flags, String... fields) {
+    this.type = type;
+    this.flags = flags;
+    this.fields = fields;
+  }
+
+  public byte getType() {
+    return type;
+  }
+
+  public byte getFlags() {
+    return flags;
+  }
+
+  public int getFieldCount() {
+    return fields.length;
+  }
+
+  public String getField(int index) {
+    return fields[index];
+  }
+
+  /**
+   * Поля кадра; массив не копируется
+   */
+  public String[] getFields() {
+    return fields;
+  }
+
+  /**
+   * Кодирование кадра без флагов
+   *
+   * @param type   тип кадра
+   * @param fields поля
+   * @return кадр целиком, с заголовком
+   */
+  public static byte[] encode(byte type, String... fields) {
+    byte[][] encodedFields = new byte[fields.length][];
+    int payloadLength = 0;
+    for (int i = 0; i < fields.length; i++) {
+      encodedFields[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+      if (encodedFields[i].length > 0xFFFF) {
+        throw new IllegalArgumentException("Поле кадра длиннее 65535 байт");
+      }
+      payloadLength += 2 + encodedFields[i].length;
+    }
+    if (payloadLength > BinaryProtocol.MAX_PAYLOAD_LENGTH) {
+      throw new IllegalArgumentException("Кадр длиннее " + BinaryProtocol.MAX_PAYLOAD_LENGTH + " байт");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.HEADER_SIZE + payloadLength);
+    buffer.put(type).put((byte) 0).putInt(payloadLength);
+    for (byte[] field : encodedFields) {
+      buffer.putShort((short) field.length).put(field);
+    }
+    return buffer.array();
+  }
+
+  public byte[] encode() {
+    return encode(type, fields);
+  }
+
+  /**
+   * Размер очередного кадра в буфере без изменения позиции
+   *
+   * @param buffer буфер в режиме чтения
+   * @return размер кадра с заголовком или -1, если заголовок получен не полностью
+   * @throws ProtocolException длина данных больше допустимой
+   */
+  public static int frameSize(ByteBuffer buffer) throws ProtocolException {
+    if (buffer.remaining() < BinaryProtocol.HEADER_SIZE) {
+      return -1;
+    }
+    int payloadLength = buffer.getInt(buffer.position() + 2);
+    if (payloadLength < 0 || payloadLength > BinaryProtocol.MAX_PAYLOAD_LENGTH) {
+      throw new ProtocolException("Некорректная длина кадра: " + payloadLength);
+    }
+    return BinaryProtocol.HEADER_SIZE + payloadLength;
+  }
+
+  /**
+   * Разбор кадра, полностью находящегося в буфере; позиция буфера переходит к следующему кадру
+   *
+   * @param buffer буфер в режиме чтения
+   * @return кадр
+   * @throws ProtocolException некорректная структура данных
+   */
+  public static BinaryFrame decode(ByteBuffer buffer) throws ProtocolException {
+    int frameSize = frameSize(buffer);
+    if (frameSize < 0 || buffer.remaining() < frameSize) {
+      throw new ProtocolException("Кадр получен не полностью");
+    }
+    byte type = buffer.get();
+    byte flags = buffer.get();
+    int payloadLength = buffer.getInt();
+    int end = buffer.position() + payloadLength;
+    return new BinaryFrame(type, flags, decodeFields(buffer, end));
+  }
+
+  /**
+   * Чтение кадра из потока
+   *
+   * @param in входящий поток
+   * @return кадр
+   * @throws IOException ошибка чтения или некорректный кадр
+   */
+  public static BinaryFrame read(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    byte flags = in.readByte();
+    int payloadLength = in.readInt();
+    if (payloadLength < 0 || payloadLength > BinaryProtocol.MAX_PAYLOAD_LENGTH) {
+      throw new ProtocolException("Некорректная длина кадра: " + payloadLength);
+    }
+    byte[] payload = new byte[payloadLength];
+    in.readFully(payload);
+    return new BinaryFrame(type, flags, decodeFields(ByteBuffer.wrap(payload), payloadLength));
+  }
+
+  private static String[] decodeFields(ByteBuffer buffer, int end) throws ProtocolException {
+    if (buffer.position() == end) {
+      return NO_FIELDS;
+    }
+    int count = 0;
+    for (int position = buffer.position(); position < end; count++) {
+      if (end - position < 2) {
+        throw new ProtocolException("Некорректное поле кадра");
+      }
+      position += 2 + Short.toUnsignedInt(buffer.getShort(position));
+      if (position > end) {
+        throw new ProtocolException("Некорректное поле кадра");
+      }
+    }
+    String[] fields = new String[count];
+    for (int i = 0; i < count; i++) {
+      int length = Short.toUnsignedInt(buffer.getShort());
+      fields[i] = decodeString(buffer, length);
+    }
+    return fields;
+  }
+
+  private static String decodeString(ByteBuffer buffer, int length) {
+    if (!buffer.hasArray()) {
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+    String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+}
@@ -0,0 +1,21 @@
+package otus.project.common;
+
+/**
+ * Параметры двоичного протокола. Подключение начинается в текстовом протоколе (writeUTF);
+ * клиент отправляет HANDSHAKE первым сообщением, и после ответа HANDSHAKE_OK обе стороны
+ * переходят на двоичные кадры. Сервер, не знающий версию, отвечает обычным текстом,
+ * и клиент остается на текстовом протоколе
+ */
+public final class BinaryProtocol {
+  public static final int VERSION = 1;
+  public static final String HANDSHAKE = "/protocol binary " + VERSION;
+  public static final String HANDSHAKE_OK = "/protocolok binary " + VERSION;
+  /**
+   * Заголовок кадра: тип (1 байт), флаги (1 байт), длина данных (4 байта)
+   */
+  public static final int HEADER_SIZE = 6;
+  public static final int MAX_PAYLOAD_LENGTH = 1 << 20;
+
+  private BinaryProtocol() {
+  }
+}
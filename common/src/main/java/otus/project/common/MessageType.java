@@ -0,0 +1,57 @@
+package otus.project.common;
+
+/**
+ * Типы кадров двоичного протокола
+ */
+public final class MessageType {
+  // Клиент -> сервер
+  public static final byte AUTH = 1;
+  public static final byte REGISTER = 2;
+  public static final byte MESSAGE = 3;
+  public static final byte PRIVATE = 4;
+  public static final byte BAN = 5;
+  public static final byte CHANGE_NICK = 6;
+  public static final byte ACTIVE_LIST = 7;
+  public static final byte HISTORY = 8;
+  public static final byte JOIN = 9;
+  public static final byte LEAVE = 10;
+  public static final byte SHUTDOWN = 11;
+  public static final byte EXIT = 12;
+  /**
+   * Команда в текстовом виде, для которой нет отдельного типа кадра
+   */
+  public static final byte COMMAND = 13;
+  public static final byte METRICS = 14;
+  public static final byte RESUME = 15;
+  public static final byte PRESENCE = 16;
+
+  // Сервер -> клиент
+  public static final byte TEXT = 64;
+  public static final byte AUTH_OK = 65;
+  public static final byte REG_OK = 66;
+  public static final byte BAN_OK = 67;
+  public static final byte EXIT_OK = 68;
+  /**
+   * Изменение списка пользователей для подписчиков: версия, операция (+ вход, - выход, ~ смена имени,
+   * = подтверждение подписки с текущей версией) и имена
+   */
+  public static final byte PRESENCE_DELTA = 69;
+
+  private MessageType() {
+  }
+
+  /**
+   * Количество полей, обязательное для кадра данного типа
+   *
+   * @param type тип кадра
+   * @return количество полей
+   */
+  public static int fieldCount(byte type) {
+    return switch (type) {
+      case AUTH, PRIVATE, PRESENCE_DELTA -> 2;
+      case REGISTER -> 3;
+      case MESSAGE, BAN, CHANGE_NICK, HISTORY, JOIN, COMMAND, RESUME, PRESENCE, TEXT, AUTH_OK, REG_OK -> 1;
+      default -> 0;
+    };
+  }
+}
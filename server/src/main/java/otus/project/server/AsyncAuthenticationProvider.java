@@ -0,0 +1,72 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Асинхронная аутентификация и регистрация поверх AuthenticationProvider.
+ * Запросы выполняются на ограниченном пуле потоков БД с ограниченной очередью,
+ * при переполнении очереди запрос сразу завершается ошибкой с причиной RejectedExecutionException
+ */
+public class AsyncAuthenticationProvider {
+  private static final Logger logger = LogManager.getLogger(AsyncAuthenticationProvider.class.getName());
+  private final AuthenticationProvider authenticationProvider;
+  private final ThreadPoolExecutor executor;
+  private final ServerMetrics metrics;
+
+  public AsyncAuthenticationProvider(AuthenticationProvider authenticationProvider, int threads, int queueCapacity,
+                                     ServerMetrics metrics) {
+    this.authenticationProvider = authenticationProvider;
+    this.metrics = metrics;
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+              Thread thread = new Thread(runnable, "auth-" + threadNumber.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  public CompletableFuture<Boolean> authenticate(ClientHandler clientHandler, String login, String password) {
+    long start = System.nanoTime();
+    return submit(() -> authenticationProvider.authenticate(clientHandler, login, password))
+            .whenComplete((isSuccess, error) -> metrics.onAuthentication(false, start, isSuccess, error));
+  }
+
+  public CompletableFuture<Boolean> registration(ClientHandler clientHandler, String login, String password, String username) {
+    long start = System.nanoTime();
+    return submit(() -> authenticationProvider.registration(clientHandler, login, password, username))
+            .whenComplete((isSuccess, error) -> metrics.onAuthentication(true, start, isSuccess, error));
+  }
+
+  /**
+   * Количество запросов, ожидающих выполнения
+   */
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private CompletableFuture<Boolean> submit(BooleanSupplier task) {
+    try {
+      return CompletableFuture.supplyAsync(task::getAsBoolean, executor);
+    } catch (RejectedExecutionException e) {
+      logger.warn("Очередь аутентификации заполнена, запрос отклонен");
+      return CompletableFuture.failedFuture(new CompletionException(e));
+    }
+  }
+}
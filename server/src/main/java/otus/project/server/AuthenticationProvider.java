@@ -8,4 +8,6 @@ public interface AuthenticationProvider {
   boolean addRoleToUser(ClientHandler clientHandler, String username, String role);
 
   boolean delRoleForUser(ClientHandler clientHandler, String username, String role);
+
+  void close();
 }
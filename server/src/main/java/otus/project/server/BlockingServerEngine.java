@@ -0,0 +1,80 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Движок "поток на подключение": на каждого клиента заводятся потоки блокирующего чтения и записи.
+ * Потоки могут быть обычными (platform) или виртуальными - код чтения/записи при этом не меняется
+ */
+public class BlockingServerEngine implements ServerEngine {
+  private static final Logger logger = LogManager.getLogger(BlockingServerEngine.class.getName());
+  private final int port;
+  private final boolean isVirtual;
+  private final Thread.Builder threadBuilder;
+  private ServerSocket serverSocket;
+
+  public BlockingServerEngine(int port, boolean isVirtual) {
+    this.port = port;
+    this.isVirtual = isVirtual;
+    this.threadBuilder = isVirtual ? Thread.ofVirtual().name("client-", 0) : Thread.ofPlatform().name("client-", 0);
+  }
+
+  @Override
+  public void start(Server server) throws IOException {
+    serverSocket = new ServerSocket(port);
+    logger.info("Сервер запущен на порту: {}{}", port, isVirtual ? " (виртуальные потоки)" : "");
+    if (!isVirtual) {
+      acceptClients(server);
+      return;
+    }
+    IOException[] failure = new IOException[1];
+    Thread acceptor = Thread.ofVirtual().name("acceptor").start(() -> {
+      try {
+        acceptClients(server);
+      } catch (IOException e) {
+        failure[0] = e;
+      }
+    });
+    try {
+      acceptor.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      stop();
+    }
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+  private void acceptClients(Server server) throws IOException {
+    while (true) {
+      Socket socket = serverSocket.accept();
+      SocketClientConnection connection = new SocketClientConnection(socket);
+      ClientHandler clientHandler = new ClientHandler(server, connection);
+      threadBuilder.start(() -> connection.writeMessages(clientHandler));
+      threadBuilder.start(() -> {
+        try {
+          while (connection.handleNextMessage(clientHandler)) ;
+        } catch (IOException e) {
+          logger.error("Ошибка при получении сообщения от клиента из входящего потока", e);
+        } finally {
+          clientHandler.disconnect();
+        }
+      });
+    }
+  }
+
+  @Override
+  public void stop() {
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      logger.error("Не удалось закрыть serverSocket ", e);
+    }
+  }
+}
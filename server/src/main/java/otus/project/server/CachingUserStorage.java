@@ -0,0 +1,127 @@
+package otus.project.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Кэширующая обертка над хранилищем пользователей.
+ * Кэшируются id пользователей, id ролей и наборы ролей пользователей; набор ролей
+ * сбрасывается при изменении ролей пользователя. Отсутствующие записи (-1) и пустые наборы ролей
+ * неизвестных пользователей не кэшируются.
+ * Каждый сброс набора ролей увеличивает поколение кэша ролей: набор, прочитанный из хранилища,
+ * кладется в кэш только если за время чтения поколение не изменилось, иначе запрос, начатый
+ * до изменения ролей, мог бы вернуть в кэш устаревший набор (например, снятую роль ADMIN).
+ * Проверка логина и пароля всегда выполняется в хранилище
+ */
+public class CachingUserStorage implements UserStorage {
+  private final UserStorage userStorage;
+  private final LruCache<String, Integer> userIds;
+  private final LruCache<String, Integer> roleIds;
+  private final LruCache<String, List<Role>> userRoles;
+  private final Object userRolesLock;
+  private long userRolesGeneration;
+
+  public CachingUserStorage(UserStorage userStorage, int maxSize) {
+    this.userStorage = userStorage;
+    this.userIds = new LruCache<>(maxSize);
+    this.roleIds = new LruCache<>(Role.values().length * 2);
+    this.userRoles = new LruCache<>(maxSize);
+    this.userRolesLock = new Object();
+  }
+
+  @Override
+  public String getUsernameByLoginAndPassword(String login, String password) {
+    return userStorage.getUsernameByLoginAndPassword(login, password);
+  }
+
+  @Override
+  public int getUserIdByName(String username) {
+    Integer id_user = userIds.get(username);
+    if (id_user == null) {
+      id_user = userStorage.getUserIdByName(username);
+      if (id_user > -1) {
+        userIds.put(username, id_user);
+      }
+    }
+    return id_user;
+  }
+
+  @Override
+  public int getRoleIdByRolename(String role) {
+    String key = role.toUpperCase();
+    Integer id_role = roleIds.get(key);
+    if (id_role == null) {
+      id_role = userStorage.getRoleIdByRolename(key);
+      if (id_role > -1) {
+        roleIds.put(key, id_role);
+      }
+    }
+    return id_role;
+  }
+
+  @Override
+  public List<Role> getUserRolesByUsername(String username) {
+    List<Role> roles = userRoles.get(username);
+    if (roles == null) {
+      long generation;
+      synchronized (userRolesLock) {
+        generation = userRolesGeneration;
+      }
+      roles = List.copyOf(userStorage.getUserRolesByUsername(username));
+      if (!roles.isEmpty()) {
+        synchronized (userRolesLock) {
+          if (generation == userRolesGeneration) {
+            userRoles.put(username, roles);
+          }
+        }
+      }
+    }
+    return new ArrayList<>(roles);
+  }
+
+  private void invalidateUserRoles(String username) {
+    synchronized (userRolesLock) {
+      userRolesGeneration++;
+      userRoles.invalidate(username);
+    }
+  }
+
+  @Override
+  public RegistrationStatus addNewUser(String login, String password, String username) {
+    try {
+      return userStorage.addNewUser(login, password, username);
+    } finally {
+      invalidateUserRoles(username);
+    }
+  }
+
+  @Override
+  public boolean addRoleToUser(String username, int id_user, int id_role) {
+    try {
+      return userStorage.addRoleToUser(username, id_user, id_role);
+    } finally {
+      invalidateUserRoles(username);
+    }
+  }
+
+  @Override
+  public boolean deleteRoleForUser(String username, int id_user, int id_role) {
+    try {
+      return userStorage.deleteRoleForUser(username, id_user, id_role);
+    } finally {
+      invalidateUserRoles(username);
+    }
+  }
+
+  public long getHitCount() {
+    return userIds.getHitCount() + roleIds.getHitCount() + userRoles.getHitCount();
+  }
+
+  public long getMissCount() {
+    return userIds.getMissCount() + roleIds.getMissCount() + userRoles.getMissCount();
+  }
+
+  public int size() {
+    return userIds.size() + userRoles.size();
+  }
+}
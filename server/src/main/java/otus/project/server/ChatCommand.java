@@ -0,0 +1,55 @@
+package otus.project.server;
+
+import java.util.EnumSet;
+
+/**
+ * Описание команды чата
+ *
+ * @param name              имя команды в текстовом протоколе, например "/ban"
+ * @param type              тип кадра команды в двоичном протоколе или 0, если отдельного типа нет
+ * @param argumentCount     количество аргументов
+ * @param minArgumentCount  количество обязательных аргументов, остальные можно не указывать
+ * @param hasTrailingText   последний аргумент - текст до конца строки, может содержать пробелы
+ * @param usage             формат команды для подсказки
+ * @param requiredRoles     роли, любая из которых дает право на команду; пустое множество - команда доступна всем
+ * @param handler           обработчик
+ */
+public record ChatCommand(String name, byte type, int argumentCount, int minArgumentCount, boolean hasTrailingText,
+                          String usage, EnumSet<Role> requiredRoles, Handler handler) {
+  /**
+   * Команда, все аргументы которой обязательны
+   */
+  public ChatCommand(String name, byte type, int argumentCount, boolean hasTrailingText, String usage,
+                     EnumSet<Role> requiredRoles, Handler handler) {
+    this(name, type, argumentCount, argumentCount, hasTrailingText, usage, requiredRoles, handler);
+  }
+
+  @FunctionalInterface
+  public interface Handler {
+    /**
+     * Выполнение команды
+     *
+     * @param clientHandler клиент, отправивший команду
+     * @param arguments     аргументы команды
+     */
+    void handle(ClientHandler clientHandler, String[] arguments);
+  }
+
+  /**
+   * Есть ли у пользователя право на команду
+   *
+   * @param userRoles роли пользователя
+   * @return true/false есть/нет
+   */
+  public boolean isPermitted(EnumSet<Role> userRoles) {
+    if (requiredRoles.isEmpty()) {
+      return true;
+    }
+    for (Role role : requiredRoles) {
+      if (userRoles.contains(role)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,40 @@
+package otus.project.server;
+
+import otus.project.common.MessageType;
+
+import java.util.EnumSet;
+
+/**
+ * Стандартные команды чата, доступные после аутентификации
+ */
+public final class ChatCommands {
+  private ChatCommands() {
+  }
+
+  public static CommandRegistry createRegistry() {
+    CommandRegistry registry = new CommandRegistry();
+    EnumSet<Role> anyone = EnumSet.noneOf(Role.class);
+    EnumSet<Role> admin = EnumSet.of(Role.ADMIN);
+    registry.register(new ChatCommand("/w", MessageType.PRIVATE, 2, true, "/w username message", anyone,
+            (client, arguments) -> client.sendPrivateMessage(arguments[0], arguments[1])));
+    registry.register(new ChatCommand("/ban", MessageType.BAN, 1, false, "/ban username", admin,
+            (client, arguments) -> client.ban(arguments[0])));
+    registry.register(new ChatCommand("/changenick", MessageType.CHANGE_NICK, 1, false, "/changenick username", anyone,
+            (client, arguments) -> client.changeUsername(arguments[0])));
+    registry.register(new ChatCommand("/join", MessageType.JOIN, 1, false, "/join room", anyone,
+            (client, arguments) -> client.joinRoom(arguments[0])));
+    registry.register(new ChatCommand("/leave", MessageType.LEAVE, 0, false, "/leave", anyone,
+            (client, arguments) -> client.leaveRoom()));
+    registry.register(new ChatCommand("/activelist", MessageType.ACTIVE_LIST, 1, 0, false, "/activelist [cursor]",
+            anyone, (client, arguments) -> client.sendActiveList(arguments.length > 0 ? arguments[0] : null)));
+    registry.register(new ChatCommand("/presence", MessageType.PRESENCE, 1, false, "/presence on|off", anyone,
+            (client, arguments) -> client.setPresenceSubscription(arguments[0])));
+    registry.register(new ChatCommand("/history", MessageType.HISTORY, 1, false, "/history N", anyone,
+            (client, arguments) -> client.sendHistory(arguments[0])));
+    registry.register(new ChatCommand("/shutdown", MessageType.SHUTDOWN, 0, false, "/shutdown", admin,
+            (client, arguments) -> client.shutdown()));
+    registry.register(new ChatCommand("/metrics", MessageType.METRICS, 0, false, "/metrics", admin,
+            (client, arguments) -> client.sendMetrics()));
+    return registry;
+  }
+}
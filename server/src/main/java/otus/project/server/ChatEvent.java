@@ -0,0 +1,45 @@
+package otus.project.server;
+
+/**
+ * Событие чата для сохранения в БД
+ *
+ * @param timestamp время события
+ * @param type      тип события
+ * @param actor     пользователь, выполнивший действие
+ * @param target    получатель сообщения, комната, заблокированный пользователь или пользователь, чья роль изменена
+ * @param text      текст сообщения или название роли
+ */
+public record ChatEvent(long timestamp, Type type, String actor, String target, String text) {
+  public enum Type {
+    MESSAGE,
+    PRIVATE_MESSAGE,
+    ROOM_MESSAGE,
+    BAN,
+    ROLE_ADDED,
+    ROLE_REMOVED,
+  }
+
+  public static ChatEvent message(String actor, String text) {
+    return new ChatEvent(System.currentTimeMillis(), Type.MESSAGE, actor, null, text);
+  }
+
+  public static ChatEvent privateMessage(String actor, String target, String text) {
+    return new ChatEvent(System.currentTimeMillis(), Type.PRIVATE_MESSAGE, actor, target, text);
+  }
+
+  public static ChatEvent roomMessage(String actor, String room, String text) {
+    return new ChatEvent(System.currentTimeMillis(), Type.ROOM_MESSAGE, actor, room, text);
+  }
+
+  public static ChatEvent ban(String actor, String target) {
+    return new ChatEvent(System.currentTimeMillis(), Type.BAN, actor, target, null);
+  }
+
+  public static ChatEvent roleAdded(String actor, String target, String role) {
+    return new ChatEvent(System.currentTimeMillis(), Type.ROLE_ADDED, actor, target, role);
+  }
+
+  public static ChatEvent roleRemoved(String actor, String target, String role) {
+    return new ChatEvent(System.currentTimeMillis(), Type.ROLE_REMOVED, actor, target, role);
+  }
+}
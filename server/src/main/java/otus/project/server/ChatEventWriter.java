@@ -0,0 +1,218 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Отложенная запись событий чата в БД с групповой фиксацией.
+ * События копятся в очереди, отдельный поток записывает их пачками в одной транзакции,
+ * когда набирается batchSize событий или проходит flushIntervalMillis с первого события пачки.
+ * БД переводится в режим WAL, чтобы запись не блокировала чтение при аутентификации
+ */
+public class ChatEventWriter {
+  private static final Logger logger = LogManager.getLogger(ChatEventWriter.class.getName());
+  private static final String CREATE_TABLE = """
+          CREATE TABLE IF NOT EXISTS chat_events
+           (id INTEGER PRIMARY KEY, date INTEGER NOT NULL, type TEXT NOT NULL, actor TEXT, target TEXT, text TEXT)
+          """;
+  private static final String ADD_EVENT = """
+          INSERT INTO chat_events
+           (date, type, actor, target, text)
+           VALUES (?, ?, ?, ?, ?)
+          """;
+  private final String url;
+  private final long busyTimeoutMillis;
+  private final int batchSize;
+  private final long flushIntervalMillis;
+  private final BlockingQueue<ChatEvent> pendingEvents;
+  private final Thread writer;
+  private final LongAdder writtenCount;
+  private final LongAdder batchCount;
+  private final LongAdder flushNanos;
+  private final AtomicLong maxFlushNanos;
+  private final AtomicLong droppedCount;
+  private volatile boolean isRunning;
+
+  public ChatEventWriter(String url, long busyTimeoutMillis, int batchSize, long flushIntervalMillis, int queueCapacity) {
+    this.url = url;
+    this.busyTimeoutMillis = busyTimeoutMillis;
+    this.batchSize = batchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.pendingEvents = new ArrayBlockingQueue<>(queueCapacity);
+    this.writer = new Thread(this::writeEvents, "chat-event-writer");
+    this.writer.setDaemon(true);
+    this.writtenCount = new LongAdder();
+    this.batchCount = new LongAdder();
+    this.flushNanos = new LongAdder();
+    this.maxFlushNanos = new AtomicLong();
+    this.droppedCount = new AtomicLong();
+  }
+
+  public void start() {
+    isRunning = true;
+    writer.start();
+  }
+
+  /**
+   * Постановка события в очередь записи. При заполненной очереди событие отбрасывается
+   *
+   * @param event событие
+   */
+  public void add(ChatEvent event) {
+    if (!pendingEvents.offer(event) && droppedCount.incrementAndGet() == 1) {
+      logger.warn("Очередь записи событий в БД заполнена, события не сохраняются");
+    }
+  }
+
+  /**
+   * Остановка записи с сохранением событий, оставшихся в очереди
+   */
+  public void close() {
+    isRunning = false;
+    writer.interrupt();
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public long getWrittenCount() {
+    return writtenCount.sum();
+  }
+
+  public long getBatchCount() {
+    return batchCount.sum();
+  }
+
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public int getQueueSize() {
+    return pendingEvents.size();
+  }
+
+  /**
+   * Средний размер пачки событий
+   */
+  public double getAverageBatchSize() {
+    long batches = batchCount.sum();
+    return batches == 0 ? 0 : (double) writtenCount.sum() / batches;
+  }
+
+  /**
+   * Среднее время записи пачки, мс
+   */
+  public double getAverageFlushMillis() {
+    long batches = batchCount.sum();
+    return batches == 0 ? 0 : flushNanos.sum() / 1_000_000.0 / batches;
+  }
+
+  /**
+   * Максимальное время записи пачки, мс
+   */
+  public double getMaxFlushMillis() {
+    return maxFlushNanos.get() / 1_000_000.0;
+  }
+
+  private void writeEvents() {
+    Properties properties = new Properties();
+    properties.setProperty("busy_timeout", String.valueOf(busyTimeoutMillis));
+    try (Connection connection = DriverManager.getConnection(url, properties)) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("PRAGMA journal_mode=WAL");
+        statement.execute("PRAGMA synchronous=NORMAL");
+        statement.execute(CREATE_TABLE);
+      }
+      logger.info("Запись событий чата в БД запущена: пачка {}, интервал {} мс", batchSize, flushIntervalMillis);
+      try (PreparedStatement statement = connection.prepareStatement(ADD_EVENT)) {
+        List<ChatEvent> batch = new ArrayList<>(batchSize);
+        while (isRunning || !pendingEvents.isEmpty()) {
+          collectBatch(batch);
+          if (!batch.isEmpty()) {
+            flush(connection, statement, batch);
+            batch.clear();
+          }
+        }
+      }
+      logger.info("Запись событий чата в БД остановлена: событий {}, транзакций {}, средняя пачка {}, "
+              + "среднее время записи {} мс, максимальное {} мс", getWrittenCount(), getBatchCount(),
+              getAverageBatchSize(), getAverageFlushMillis(), getMaxFlushMillis());
+    } catch (SQLException e) {
+      logger.error("Ошибка при записи событий чата в БД, запись остановлена", e);
+    }
+  }
+
+  /**
+   * Набор пачки: ожидание первого события, затем добор до batchSize не дольше flushIntervalMillis
+   */
+  private void collectBatch(List<ChatEvent> batch) {
+    try {
+      ChatEvent event = pendingEvents.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+      if (event == null) {
+        return;
+      }
+      batch.add(event);
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+      while (batch.size() < batchSize) {
+        pendingEvents.drainTo(batch, batchSize - batch.size());
+        long remaining = deadline - System.nanoTime();
+        if (batch.size() >= batchSize || remaining <= 0) {
+          break;
+        }
+        event = pendingEvents.poll(remaining, TimeUnit.NANOSECONDS);
+        if (event == null) {
+          break;
+        }
+        batch.add(event);
+      }
+    } catch (InterruptedException e) {
+      isRunning = false;
+      pendingEvents.drainTo(batch);
+    }
+  }
+
+  private void flush(Connection connection, PreparedStatement statement, List<ChatEvent> batch) throws SQLException {
+    long start = System.nanoTime();
+    connection.setAutoCommit(false);
+    try {
+      for (ChatEvent event : batch) {
+        statement.setLong(1, event.timestamp());
+        statement.setString(2, event.type().name());
+        statement.setString(3, event.actor());
+        statement.setString(4, event.target());
+        statement.setString(5, event.text());
+        statement.addBatch();
+      }
+      statement.executeBatch();
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      logger.error("Не удалось сохранить в БД пачку из {} событий", batch.size(), e);
+      return;
+    } finally {
+      statement.clearBatch();
+      connection.setAutoCommit(true);
+    }
+    long elapsed = System.nanoTime() - start;
+    writtenCount.add(batch.size());
+    batchCount.increment();
+    flushNanos.add(elapsed);
+    maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+  }
+}
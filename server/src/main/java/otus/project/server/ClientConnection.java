@@ -0,0 +1,30 @@
+package otus.project.server;
+
+/**
+ * Транспорт, через который клиент-обработчик общается с подключенным клиентом.
+ * Формат сообщений на проводе - как у DataOutputStream.writeUTF (длина + modified UTF-8),
+ * после согласования - кадры двоичного протокола.
+ * Исходящие сообщения транспорт забирает из очереди клиента-обработчика
+ */
+public interface ClientConnection {
+  /**
+   * Уведомление о появлении нового сообщения в исходящей очереди клиента
+   */
+  void onMessageQueued();
+
+  /**
+   * Переход на чтение кадров двоичного протокола, начиная со следующего входящего сообщения
+   */
+  void useBinaryProtocol();
+
+  /**
+   * Закрытие подключения после отправки сообщений, оставшихся в исходящей очереди
+   */
+  void close();
+
+  /**
+   * Немедленное закрытие подключения без отправки оставшихся сообщений. Выход клиента из чата
+   * (ClientHandler.disconnect) выполняется позже в потоке этого подключения
+   */
+  void abort();
+}
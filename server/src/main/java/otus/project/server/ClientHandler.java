@@ -2,30 +2,64 @@ package otus.project.server;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import otus.project.common.BinaryFrame;
+import otus.project.common.BinaryProtocol;
+import otus.project.common.MessageType;
+import otus.project.server.jfr.DispatchEvent;
+import otus.project.server.jfr.EnqueueEvent;
+import otus.project.server.jfr.PipelineTracing;
+import otus.project.server.jfr.ReceiveEvent;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.net.Socket;
+import java.io.UTFDataFormatException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 public class ClientHandler {
   private static final Logger logger = LogManager.getLogger(ClientHandler.class.getName());
-  private Server server;
-  private Socket socket;
-  private DataInputStream in;
-  private DataOutputStream out;
-  private String username;
+  private static final int MAX_PENDING_MESSAGES = 16;
+  private final Server server;
+  private final ClientConnection connection;
+  private final OutboundQueue outboundQueue;
+  private final AtomicBoolean isDisconnected;
+  private final ReentrantLock authLock;
+  private final List<BooleanSupplier> pendingMessages;
+  private volatile String username;
+  /**
+   * Имя учетной записи в БД: в отличие от username не меняется при смене ника,
+   * по нему определяется доступ к личным сообщениям в истории
+   */
+  private volatile String accountName;
+  private volatile String sessionId;
+  private volatile Room room;
   private boolean inChat;
   private boolean isActive;
-  private List<Role> userRoles;
-  private long lastActive;
+  /**
+   * Признак для потока чтения без блокировки: публикуется только после обработки отложенных сообщений,
+   * до этого сообщения проходят через authLock и не обгоняют отложенные
+   */
+  private volatile boolean isAuthenticated;
+  /**
+   * Результат аутентификации, читается и изменяется только под authLock
+   */
+  private boolean isLoggedIn;
+  private boolean isAuthenticationInProgress;
+  private volatile boolean isBinaryProtocol;
+  private EnumSet<Role> userRoles;
+  private volatile long lastActive;
 
   public long getLastActive() {
     return lastActive;
   }
 
+  public boolean isDisconnected() {
+    return isDisconnected.get();
+  }
+
   public void setInChat(boolean inChat) {
     this.inChat = inChat;
   }
@@ -35,7 +69,21 @@ public class ClientHandler {
   }
 
   public void setUserRoles(List<Role> roles) {
-    this.userRoles = roles;
+    EnumSet<Role> userRoles = EnumSet.noneOf(Role.class);
+    userRoles.addAll(roles);
+    this.userRoles = userRoles;
+  }
+
+  public OutboundQueue getOutboundQueue() {
+    return outboundQueue;
+  }
+
+  public Room getRoom() {
+    return room;
+  }
+
+  public void setRoom(Room room) {
+    this.room = room;
   }
 
   public String getUsername() {
@@ -46,159 +94,640 @@ public class ClientHandler {
     this.username = username;
   }
 
-  public ClientHandler(Server server, Socket socket) throws IOException {
+  public String getAccountName() {
+    return accountName;
+  }
+
+  public void setAccountName(String accountName) {
+    this.accountName = accountName;
+  }
+
+  public ClientHandler(Server server, ClientConnection connection) {
     this.server = server;
-    this.socket = socket;
-    this.in = new DataInputStream(socket.getInputStream());
-    this.out = new DataOutputStream(socket.getOutputStream());
+    this.connection = connection;
+    this.outboundQueue = new OutboundQueue(server.getConfig().getOutboundQueueCapacity(),
+            server.getConfig().getOverflowPolicy());
     this.inChat = true;
-    this.userRoles = new ArrayList<>();
+    this.userRoles = EnumSet.noneOf(Role.class);
     this.lastActive = System.currentTimeMillis();
     this.isActive = true;
-    new Thread(() -> {
+    this.isDisconnected = new AtomicBoolean();
+    this.authLock = new ReentrantLock();
+    this.pendingMessages = new ArrayList<>();
+    server.getMetrics().onConnected();
+    logger.info("Подключился новый клиент");
+  }
+
+  /**
+   * Обработка очередного сообщения текстового протокола от клиента
+   *
+   * @param message сообщение
+   * @return true/false продолжать/завершить работу с клиентом
+   */
+  public boolean handleMessage(String message) {
+    server.getMetrics().onMessageIn();
+    DispatchEvent event = traceReceive("text", 0);
+    if (event == null) {
+      return processMessage(message);
+    }
+    String sender = username;
+    event.begin();
+    boolean result = processMessage(message);
+    commitDispatch(event, sender, commandName(message));
+    return result;
+  }
+
+  private boolean processMessage(String message) {
+    if (!isAuthenticated) {
+      authLock.lock();
       try {
-        logger.info("Подключился новый клиент");
-        while (true) {
-          String message = in.readUTF();
-          if (message.equals("/exit")) {
-            sendMessage("/exitok");
-            return;
-          }
-          if (message.startsWith("/auth ")) {
-            String[] elements = message.split(" ");
-            if (elements.length != 3) {
-              sendMessage("Не верный формат команды /auth (/auth login password)");
-              continue;
-            }
-            if (server.getAuthenticationProvider().authenticate(this, elements[1], elements[2])) {
-              break;
-            }
-            continue;
-          }
-          if (message.startsWith("/register ")) {
-            String[] elements = message.split(" ");
-            if (elements.length != 4) {
-              sendMessage("Не верный формат команды /register (/register login password username)");
-              continue;
-            }
-            if (server.getAuthenticationProvider().registration(this, elements[1], elements[2], elements[3])) {
-              break;
-            }
-            continue;
-          }
-          sendMessage("Перед работой с чатом необходимо выполнить аутентификацию '/auth login password' или регистрацию '/register login password username'");
+        if (isAuthenticationInProgress) {
+          return deferMessage(() -> processMessage(message));
         }
-        while (isActive) {
-          String message = in.readUTF();
-          if (message.startsWith("/")) {
-            if (message.equals("/exit")) {
-              sendMessage("/exitok");
-              break;
-            }
-            if (inChat) {
-              if (message.startsWith("/w ")) {
-                server.sendPrivateMessage(this, message);
-                setNewLastActive();
-              }
-              if (message.startsWith("/ban ")) {
-                if (isHaveRole(userRoles, Role.ADMIN)) {
-                  String[] elements = message.split(" ");
-                  if (elements.length != 2) {
-                    sendMessage("Не верный формат команды /ban (/ban username)");
-                    continue;
-                  }
-                  server.handleBan(this, elements[1]);
-                } else {
-                  sendMessage("У вас не достоточно прав для команды /ban");
-                  continue;
-                }
-              }
-              if (message.startsWith("/changenick ")){
-                String[] elements = message.split(" ");
-                if (elements.length != 2) {
-                  sendMessage("Не верный формат команды /changenick (/changenick username)");
-                  continue;
-                }
-                username = elements[1];
-                sendMessage("Вы сменили ник на " + username);
-              }
-              if (message.startsWith("/activelist")) {
-                server.sendActiveList(this);
-              }
-              if (message.startsWith("/shutdown")) {
-                if (isHaveRole(userRoles, Role.ADMIN)) {
-                  server.shutdown();
-                } else {
-                  sendMessage("У вас не достоточно прав для команды /shutdown");
-                  continue;
-                }
-              }
-            }
-            continue;
-          }
-          if (inChat) {
-            server.broadcastMessage(username + ": " + message);
-            setNewLastActive();
+        if (!isLoggedIn) {
+          return handleUnauthenticatedMessage(message);
+        }
+      } finally {
+        authLock.unlock();
+      }
+    }
+    if (message.startsWith("/")) {
+      if (message.equals("/exit")) {
+        server.getSessionManager().invalidate(sessionId);
+        sendExitOk();
+        return false;
+      }
+      if (inChat) {
+        ChatCommand command = server.getCommandRegistry().find(message);
+        if (command != null) {
+          String[] arguments = CommandRegistry.parseArguments(command, message);
+          if (arguments == null) {
+            sendMessage("Не верный формат команды " + command.name() + " (" + command.usage() + ")");
+            return isActive;
           }
+          execute(command, arguments);
+        }
+      }
+      return isActive;
+    }
+    if (inChat) {
+      sendChatMessage(message);
+    }
+    return isActive;
+  }
+
+  /**
+   * Обработка очередного кадра двоичного протокола от клиента: аргументы команд уже разложены по полям кадра
+   *
+   * @param frame кадр
+   * @return true/false продолжать/завершить работу с клиентом
+   */
+  public boolean handleFrame(BinaryFrame frame) {
+    server.getMetrics().onMessageIn();
+    DispatchEvent event = traceReceive("binary", frame.getType());
+    if (event == null) {
+      return processFrame(frame);
+    }
+    String sender = username;
+    event.begin();
+    boolean result = processFrame(frame);
+    commitDispatch(event, sender, commandName(frame));
+    return result;
+  }
+
+  /**
+   * Запись события приема сообщения, если оно попало в выборку
+   *
+   * @return событие обработки этого сообщения или null, если сообщение не трассируется
+   */
+  private DispatchEvent traceReceive(String protocol, int messageType) {
+    ReceiveEvent receiveEvent = new ReceiveEvent();
+    DispatchEvent dispatchEvent = new DispatchEvent();
+    if (!receiveEvent.isEnabled() && !dispatchEvent.isEnabled() || !PipelineTracing.isSampled()) {
+      return null;
+    }
+    if (receiveEvent.shouldCommit()) {
+      receiveEvent.username = username;
+      receiveEvent.protocol = protocol;
+      receiveEvent.messageType = messageType;
+      receiveEvent.commit();
+    }
+    return dispatchEvent;
+  }
+
+  private void commitDispatch(DispatchEvent event, String sender, String command) {
+    if (event.shouldCommit()) {
+      event.username = sender;
+      event.command = command;
+      event.commit();
+    }
+  }
+
+  private String commandName(String message) {
+    if (!message.startsWith("/")) {
+      return "message";
+    }
+    int end = message.indexOf(' ');
+    return end < 0 ? message : message.substring(0, end);
+  }
+
+  private String commandName(BinaryFrame frame) {
+    return switch (frame.getType()) {
+      case MessageType.MESSAGE -> "message";
+      case MessageType.AUTH -> "/auth";
+      case MessageType.REGISTER -> "/register";
+      case MessageType.EXIT -> "/exit";
+      case MessageType.COMMAND -> commandName(frame.getField(0));
+      default -> {
+        ChatCommand command = server.getCommandRegistry().find(frame.getType());
+        yield command != null ? command.name() : "type " + frame.getType();
+      }
+    };
+  }
+
+  private boolean processFrame(BinaryFrame frame) {
+    if (frame.getFieldCount() < MessageType.fieldCount(frame.getType())) {
+      sendMessage("Некорректный кадр: тип " + frame.getType() + ", полей " + frame.getFieldCount());
+      return true;
+    }
+    if (!isAuthenticated) {
+      authLock.lock();
+      try {
+        if (isAuthenticationInProgress) {
+          return deferMessage(() -> processFrame(frame));
+        }
+        if (!isLoggedIn) {
+          return handleUnauthenticatedFrame(frame);
         }
-      } catch (IOException e) {
-        logger.error("Ошибка при получении сообщения от клиента из входящего потока", e);
       } finally {
-        disconnect();
+        authLock.unlock();
       }
-    }).start();
+    }
+    if (frame.getType() == MessageType.EXIT) {
+      server.getSessionManager().invalidate(sessionId);
+      sendExitOk();
+      return false;
+    }
+    if (frame.getType() == MessageType.COMMAND) {
+      return processMessage(frame.getField(0));
+    }
+    if (!inChat) {
+      return isActive;
+    }
+    if (frame.getType() == MessageType.MESSAGE) {
+      sendChatMessage(frame.getField(0));
+      return isActive;
+    }
+    ChatCommand command = server.getCommandRegistry().find(frame.getType());
+    if (command == null) {
+      sendMessage("Неизвестный тип сообщения: " + frame.getType());
+      return isActive;
+    }
+    execute(command, frame.getFields());
+    return isActive;
   }
 
-  private void setNewLastActive() {
-    lastActive = System.currentTimeMillis();
+  /**
+   * Выполнение команды с проверкой прав пользователя. Аргументы, кроме текста до конца строки,
+   * проверяются одинаково для обоих протоколов: имена комнат и пользователей из кадров
+   * двоичного протокола не должны отличаться от тех, что можно задать текстовой командой
+   *
+   * @param command   команда
+   * @param arguments аргументы команды
+   */
+  private void execute(ChatCommand command, String[] arguments) {
+    if (!command.isPermitted(userRoles)) {
+      sendMessage("У вас не достоточно прав для команды " + command.name());
+      return;
+    }
+    int nameCount = command.hasTrailingText() ? arguments.length - 1 : arguments.length;
+    for (int i = 0; i < nameCount; i++) {
+      if (!isValidName(arguments[i])) {
+        sendMessage("Не верный формат команды " + command.name() + " (" + command.usage() + ")");
+        return;
+      }
+    }
+    command.handler().handle(this, arguments);
   }
 
-  private boolean isHaveRole(List<Role> userRoles, Role role) {
-    for (Role r : userRoles) {
-      if (r == role) {
+  /**
+   * Отложенная обработка сообщения, пришедшего во время аутентификации
+   */
+  private boolean deferMessage(BooleanSupplier message) {
+    if (pendingMessages.size() < MAX_PENDING_MESSAGES) {
+      pendingMessages.add(message);
+    } else {
+      sendMessage("Дождитесь завершения аутентификации");
+    }
+    return true;
+  }
+
+  private boolean handleUnauthenticatedMessage(String message) {
+    if (message.equals("/exit")) {
+      sendExitOk();
+      return false;
+    }
+    if (message.equals(BinaryProtocol.HANDSHAKE)) {
+      sendMessage(BinaryProtocol.HANDSHAKE_OK);
+      isBinaryProtocol = true;
+      connection.useBinaryProtocol();
+      return true;
+    }
+    if (message.startsWith("/auth ")) {
+      String[] elements = message.split(" ");
+      if (elements.length != 3) {
+        sendMessage("Не верный формат команды /auth (/auth login password)");
+        return true;
+      }
+      authenticate(elements[1], elements[2]);
+      return true;
+    }
+    if (message.startsWith("/resume ")) {
+      String[] elements = message.split(" ");
+      if (elements.length != 2) {
+        sendMessage("Не верный формат команды /resume (/resume token)");
         return true;
       }
+      resume(elements[1]);
+      return true;
     }
-    return false;
+    if (message.startsWith("/register ")) {
+      String[] elements = message.split(" ");
+      if (elements.length != 4) {
+        sendMessage("Не верный формат команды /register (/register login password username)");
+        return true;
+      }
+      register(elements[1], elements[2], elements[3]);
+      return true;
+    }
+    sendMessage("Перед работой с чатом необходимо выполнить аутентификацию '/auth login password' или регистрацию '/register login password username'");
+    return true;
   }
 
-  public void sendMessage(String message) {
-    if (message.equals("/exitok") || inChat) {
-      try {
-        out.writeUTF(message);
-      } catch (IOException e) {
-        logger.error("Ошибка при отправке сообщения клиенту в исходящий поток", e);
+  private boolean handleUnauthenticatedFrame(BinaryFrame frame) {
+    switch (frame.getType()) {
+      case MessageType.EXIT -> {
+        sendExitOk();
+        return false;
+      }
+      case MessageType.AUTH -> authenticate(frame.getField(0), frame.getField(1));
+      case MessageType.REGISTER -> register(frame.getField(0), frame.getField(1), frame.getField(2));
+      case MessageType.RESUME -> resume(frame.getField(0));
+      case MessageType.COMMAND -> {
+        return handleUnauthenticatedMessage(frame.getField(0));
       }
+      default -> sendMessage("Перед работой с чатом необходимо выполнить аутентификацию '/auth login password' или регистрацию '/register login password username'");
     }
+    return true;
   }
 
-  public void disableClient() {
-    isActive = false;
-    sendMessage("/exitok");
+  private void authenticate(String login, String password) {
+    isAuthenticationInProgress = true;
+    server.getAsyncAuthenticationProvider().authenticate(this, login, password)
+            .whenComplete(this::onAuthenticationComplete);
   }
 
-  public void disconnect() {
-    server.unsubscribe(this);
+  /**
+   * Восстановление сессии по токену, выданному при прошлой аутентификации: имя и роли берутся
+   * из таблицы сессий без обращения к БД. Имя нужно индексу клиентов сервера и выставляется до подписки,
+   * роли и учетная запись - только после ее успеха. Подключение той же сессии, которое сервер еще не успел
+   * закрыть после обрыва связи, отключается
+   *
+   * @param token токен сессии
+   */
+  private void resume(String token) {
+    SessionManager.Session session = server.getSessionManager().resume(token);
+    if (session == null) {
+      server.getMetrics().onResume(false);
+      sendMessage("Сессия недействительна или истекла, выполните аутентификацию '/auth login password'");
+      return;
+    }
+    username = session.username();
+    isAuthenticationInProgress = true;
+    server.resumeSession(this, session.id())
+            .thenApply(isResumed -> {
+              if (!isResumed) {
+                username = null;
+                server.getMetrics().onResume(false);
+                sendMessage("Указанная учетная запись уже занята");
+                return false;
+              }
+              userRoles = EnumSet.copyOf(session.roles());
+              accountName = session.accountName();
+              server.getMetrics().onResume(true);
+              sendAuthOk(session.username());
+              return true;
+            })
+            .whenComplete(this::onAuthenticationComplete);
+  }
+
+  String getSessionId() {
+    return sessionId;
+  }
+
+  private void register(String login, String password, String username) {
+    if (!isValidName(login) || !isValidName(password) || !isValidName(username)) {
+      sendMessage("Не верный формат команды /register (/register login password username)");
+      return;
+    }
+    isAuthenticationInProgress = true;
+    server.getAsyncAuthenticationProvider().registration(this, login, password, username)
+            .whenComplete(this::onAuthenticationComplete);
+  }
+
+  /**
+   * Завершение асинхронной аутентификации/регистрации. Сообщения, пришедшие во время
+   * проверки, обрабатываются по порядку уже с ее результатом. isAuthenticated выставляется
+   * только после них, поэтому новые сообщения ждут authLock и не выполняются параллельно с отложенными
+   *
+   * @param isSuccess успех/неудача
+   * @param error     ошибка выполнения запроса или null
+   */
+  private void onAuthenticationComplete(Boolean isSuccess, Throwable error) {
+    authLock.lock();
     try {
-      if (in != null) {
-        in.close();
+      isAuthenticationInProgress = false;
+      if (error != null) {
+        if (error.getCause() instanceof RejectedExecutionException) {
+          sendMessage("Сервер перегружен, повторите попытку позже");
+        } else {
+          logger.error("Ошибка при аутентификации клиента", error);
+          sendMessage("Не удалось выполнить аутентификацию, повторите попытку позже");
+        }
+      } else if (isSuccess) {
+        isLoggedIn = true;
+        if (isDisconnected.get()) {
+          server.unsubscribe(this);
+          return;
+        }
       }
-    } catch (IOException e) {
-      logger.error("Ошибка при закрытии входящего потока", e);
+      List<BooleanSupplier> messages = new ArrayList<>(pendingMessages);
+      pendingMessages.clear();
+      for (BooleanSupplier message : messages) {
+        if (!message.getAsBoolean()) {
+          disconnect();
+          return;
+        }
+      }
+      isAuthenticated = isLoggedIn;
+    } finally {
+      authLock.unlock();
     }
-    try {
-      if (out != null) {
-        out.close();
+  }
+
+  private void sendChatMessage(String message) {
+    Room currentRoom = room;
+    if (currentRoom != null) {
+      server.sendRoomMessage(this, currentRoom, message);
+    } else {
+      server.sendChatMessage(this, message);
+    }
+    setNewLastActive();
+  }
+
+  void sendPrivateMessage(String recipient, String message) {
+    server.sendPrivateMessage(this, recipient, message);
+    setNewLastActive();
+  }
+
+  void ban(String name) {
+    server.handleBan(this, name);
+  }
+
+  void changeUsername(String newUsername) {
+    server.changeUsername(this, newUsername).thenAccept(isChanged -> {
+      if (!isChanged) {
+        sendMessage("Имя пользователя " + newUsername + " уже занято");
+        return;
       }
-    } catch (IOException e) {
-      logger.error("Ошибка при закрытии исходящего потока", e);
+      server.getSessionManager().rename(sessionId, newUsername);
+      sendMessage("Вы сменили ник на " + newUsername);
+    });
+  }
+
+  /**
+   * Проверка логина, пароля, имени пользователя или другого аргумента команды: в текстовом протоколе
+   * они разделяются пробелами, поэтому поля кадров двоичного протокола проверяются так же -
+   * непустые и без пробельных символов
+   *
+   * @param value значение поля
+   * @return true/false значение допустимо/недопустимо
+   */
+  private static boolean isValidName(String value) {
+    if (value.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (Character.isWhitespace(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void joinRoom(String name) {
+    server.getRoomManager().join(this, name);
+    sendMessage("Вы вошли в комнату " + name);
+  }
+
+  void leaveRoom() {
+    if (server.getRoomManager().leave(this)) {
+      sendMessage("Вы вернулись в общий чат");
+    } else {
+      sendMessage("Вы не находитесь в комнате");
+    }
+  }
+
+  void sendActiveList(String cursor) {
+    server.sendActiveList(this, cursor);
+  }
+
+  void setPresenceSubscription(String mode) {
+    if (mode.equalsIgnoreCase("on")) {
+      server.getPresence().subscribe(this);
+    } else if (mode.equalsIgnoreCase("off")) {
+      server.getPresence().unsubscribe(this);
+      sendMessage("Подписка на изменения списка пользователей отключена");
+    } else {
+      sendMessage("Не верный формат команды /presence (/presence on|off)");
     }
+  }
+
+  void sendHistory(String countArgument) {
+    int maxCount = server.getConfig().getHistoryMaxRequest();
+    int count;
     try {
-      if (socket != null) {
-        socket.close();
+      count = Integer.parseInt(countArgument);
+    } catch (NumberFormatException e) {
+      count = -1;
+    }
+    if (count < 1 || count > maxCount) {
+      sendMessage("Не верный формат команды /history (/history N, N от 1 до " + maxCount + ")");
+      return;
+    }
+    server.sendHistory(this, count);
+  }
+
+  void shutdown() {
+    server.shutdown();
+  }
+
+  void sendMetrics() {
+    sendMessage(server.getMetrics().dump());
+  }
+
+  private void setNewLastActive() {
+    lastActive = System.currentTimeMillis();
+  }
+
+  public void sendMessage(String message) {
+    if (inChat) {
+      try {
+        MessageFrame frame = MessageFrame.of(message);
+        enqueue(isBinaryProtocol ? frame.toBinary() : frame);
+      } catch (UTFDataFormatException e) {
+        logger.error("Ошибка при отправке сообщения клиенту в исходящий поток", e);
       }
-    } catch (IOException e) {
-      logger.error("Ошибка при закрытии сокета", e);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Отправка уже закодированного сообщения, общего для нескольких получателей
+   *
+   * @param frame закодированное сообщение
+   */
+  public void sendFrame(MessageFrame frame) {
+    if (inChat) {
+      enqueue(isBinaryProtocol ? frame.toBinary() : frame);
+    }
+  }
+
+  public void sendAuthOk(String username) {
+    sendControl(MessageType.AUTH_OK, "/authok", username, createSession(username));
+  }
+
+  public void sendRegOk(String username) {
+    sendControl(MessageType.REG_OK, "/regok", username, createSession(username));
+  }
+
+  public void sendBanOk() {
+    sendControl(MessageType.BAN_OK, "/banok");
+  }
+
+  /**
+   * Подтверждение выхода отправляется и заблокированному клиенту
+   */
+  public void sendExitOk() {
+    try {
+      enqueue(isBinaryProtocol ? MessageFrame.binary(MessageType.EXIT_OK) : MessageFrame.of("/exitok"));
+    } catch (UTFDataFormatException e) {
+      logger.error("Ошибка при отправке сообщения клиенту в исходящий поток", e);
+    }
+  }
+
+  /**
+   * Отправка служебного сообщения: в двоичном протоколе - отдельным типом кадра, в текстовом - командой
+   *
+   * @param type      тип кадра двоичного протокола
+   * @param command   команда текстового протокола
+   * @param arguments аргументы команды
+   */
+  void sendControl(byte type, String command, String... arguments) {
+    if (!isBinaryProtocol) {
+      sendMessage(arguments.length == 0 ? command : command + " " + String.join(" ", arguments));
+    } else if (inChat) {
+      enqueue(MessageFrame.binary(type, arguments));
+    }
+  }
+
+  /**
+   * Отправка служебного сообщения, заранее закодированного для обоих протоколов и общего для нескольких получателей
+   *
+   * @param textFrame   сообщение текстового протокола
+   * @param binaryFrame кадр двоичного протокола
+   */
+  public void sendControl(MessageFrame textFrame, MessageFrame binaryFrame) {
+    if (inChat) {
+      enqueue(isBinaryProtocol ? binaryFrame : textFrame);
+    }
+  }
+
+  /**
+   * Выдача новой сессии после аутентификации, регистрации или восстановления.
+   * Предыдущая сессия этого подключения, если она была, становится недействительной
+   *
+   * @param username имя пользователя
+   * @return токен для восстановления сессии
+   */
+  private String createSession(String username) {
+    SessionManager sessionManager = server.getSessionManager();
+    sessionManager.invalidate(sessionId);
+    SessionManager.Session session = sessionManager.create(username, accountName, EnumSet.copyOf(userRoles));
+    sessionId = session.id();
+    return session.token();
+  }
+
+  private void enqueue(MessageFrame frame) {
+    EnqueueEvent event = new EnqueueEvent();
+    event.begin();
+    boolean isAccepted = outboundQueue.offer(frame);
+    if (event.shouldCommit() && PipelineTracing.isSampled()) {
+      event.username = username;
+      event.isAccepted = isAccepted;
+      event.commit();
+    }
+    if (isAccepted) {
+      server.getMetrics().onMessageOut();
+      connection.onMessageQueued();
+      return;
+    }
+    if (outboundQueue.isClosed()) {
+      return;
+    }
+    server.getMetrics().onOutboundDropped();
+    if (outboundQueue.getOverflowPolicy() == OverflowPolicy.DISCONNECT) {
+      logger.warn("Клиент {} не успевает получать сообщения и будет отключен", username);
+      abortOnOverflow();
+    } else if (outboundQueue.getDroppedCount() == 1) {
+      logger.warn("Исходящая очередь клиента {} заполнена, сообщения отбрасываются", username);
+    }
+  }
+
+  public void disableClient() {
+    isActive = false;
+    sendExitOk();
+  }
+
+  /**
+   * Отключение клиента, переполнившего исходящую очередь. Вызывается из середины рассылки, поэтому здесь
+   * только закрываются очередь и соединение, а выход из чата с сообщением остальным выполняет поток
+   * этого клиента после закрытия соединения - не рекурсивно внутри рассылки
+   */
+  private void abortOnOverflow() {
+    outboundQueue.close();
+    connection.abort();
+  }
+
+  /**
+   * Отключение клиента без отправки сообщений, оставшихся в исходящей очереди
+   */
+  public void abort() {
+    if (isDisconnected.getAndSet(true)) {
+      return;
+    }
+    server.getMetrics().onDisconnected();
+    server.unsubscribe(this);
+    outboundQueue.close();
+    connection.abort();
+  }
+
+  public void disconnect() {
+    if (isDisconnected.getAndSet(true)) {
+      return;
+    }
+    server.getMetrics().onDisconnected();
+    server.unsubscribe(this);
+    outboundQueue.close();
+    connection.close();
+  }
+}
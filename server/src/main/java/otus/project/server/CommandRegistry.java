@@ -0,0 +1,78 @@
+package otus.project.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Таблица команд чата. Команда текстового протокола находится по имени (первому слову сообщения)
+ * одним поиском в хеш-таблице, команда двоичного протокола - по типу кадра в массиве,
+ * поэтому стоимость разбора не зависит от количества зарегистрированных команд
+ */
+public class CommandRegistry {
+  private static final String[] NO_ARGUMENTS = new String[0];
+  private final Map<String, ChatCommand> commandsByName;
+  private final ChatCommand[] commandsByType;
+
+  public CommandRegistry() {
+    this.commandsByName = new HashMap<>();
+    this.commandsByType = new ChatCommand[256];
+  }
+
+  /**
+   * Регистрация команды. Регистрация выполняется при запуске сервера, до подключения клиентов
+   *
+   * @param command команда
+   */
+  public void register(ChatCommand command) {
+    if (commandsByName.putIfAbsent(command.name(), command) != null) {
+      throw new IllegalArgumentException("Команда " + command.name() + " уже зарегистрирована");
+    }
+    if (command.type() != 0) {
+      commandsByType[command.type() & 0xFF] = command;
+    }
+  }
+
+  /**
+   * Поиск команды по сообщению текстового протокола
+   *
+   * @param message сообщение, начинающееся с '/'
+   * @return команда или null
+   */
+  public ChatCommand find(String message) {
+    int end = message.indexOf(' ');
+    return commandsByName.get(end < 0 ? message : message.substring(0, end));
+  }
+
+  /**
+   * Поиск команды по типу кадра двоичного протокола
+   *
+   * @param type тип кадра
+   * @return команда или null
+   */
+  public ChatCommand find(byte type) {
+    return commandsByType[type & 0xFF];
+  }
+
+  /**
+   * Разбор аргументов команды из сообщения текстового протокола
+   *
+   * @param command команда
+   * @param message сообщение
+   * @return аргументы или null, если их количество не соответствует команде; необязательные
+   * аргументы, которых нет в сообщении, в массив не попадают
+   */
+  public static String[] parseArguments(ChatCommand command, String message) {
+    int count = command.argumentCount();
+    if (count == 0) {
+      return NO_ARGUMENTS;
+    }
+    int start = command.name().length() + 1;
+    if (start >= message.length()) {
+      return command.minArgumentCount() == 0 ? NO_ARGUMENTS : null;
+    }
+    String[] arguments = command.hasTrailingText()
+            ? message.substring(start).split(" ", count)
+            : message.substring(start).split(" ");
+    return arguments.length >= command.minArgumentCount() && arguments.length <= count ? arguments : null;
+  }
+}
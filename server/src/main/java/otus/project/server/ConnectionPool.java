@@ -0,0 +1,93 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пул соединений с БД фиксированного размера. Соединения открываются по мере надобности
+ * и переиспользуются вместе с подготовленными в них запросами.
+ * Количество выданных соединений ограничено семафором: разрешение возвращается и при возврате
+ * соединения в пул, и при закрытии сломанного, поэтому ожидающий поток сразу получает свободное
+ * соединение или открывает новое вместо сломанного
+ */
+public class ConnectionPool {
+  private static final Logger logger = LogManager.getLogger(ConnectionPool.class.getName());
+  private final String url;
+  private final Properties properties;
+  private final long acquireTimeoutMillis;
+  private final BlockingQueue<PooledConnection> idleConnections;
+  private final Semaphore permits;
+  private volatile boolean isClosed;
+
+  /**
+   * @param url                  адрес БД
+   * @param maxSize              максимальное количество соединений
+   * @param acquireTimeoutMillis время ожидания свободного соединения, оно же busy_timeout SQLite
+   */
+  public ConnectionPool(String url, int maxSize, long acquireTimeoutMillis) {
+    this.url = url;
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+    this.properties = new Properties();
+    this.properties.setProperty("busy_timeout", String.valueOf(acquireTimeoutMillis));
+    this.idleConnections = new ArrayBlockingQueue<>(maxSize);
+    this.permits = new Semaphore(maxSize, true);
+  }
+
+  /**
+   * Получение соединения из пула. Соединение возвращается в пул методом close()
+   *
+   * @return соединение
+   * @throws SQLException не удалось открыть соединение, дождаться свободного или пул закрыт
+   */
+  public PooledConnection acquire() throws SQLException {
+    try {
+      if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLException("Нет свободного соединения с БД в течение " + acquireTimeoutMillis + " мс");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Ожидание соединения с БД прервано", e);
+    }
+    if (isClosed) {
+      permits.release();
+      throw new SQLException("Пул соединений с БД закрыт");
+    }
+    PooledConnection connection = idleConnections.poll();
+    if (connection != null) {
+      return connection;
+    }
+    try {
+      return new PooledConnection(this, DriverManager.getConnection(url, properties));
+    } catch (SQLException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  void release(PooledConnection connection) {
+    if (connection.isBroken() || isClosed || !idleConnections.offer(connection)) {
+      connection.closePhysically();
+    }
+    permits.release();
+  }
+
+  /**
+   * Закрытие пула: свободные соединения закрываются сразу, выданные - при возврате в пул
+   */
+  public void close() {
+    isClosed = true;
+    PooledConnection connection;
+    while ((connection = idleConnections.poll()) != null) {
+      connection.closePhysically();
+    }
+    logger.info("Пул соединений с БД закрыт");
+  }
+}
@@ -3,41 +3,28 @@ package otus.project.server;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.sql.*;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.List;
 
 public class DBProvider implements AuthenticationProvider {
   private static final Logger logger = LogManager.getLogger(DBProvider.class.getName());
   private final Server server;
-
-  private final String DATABASE_URL = "jdbc:sqlite:databases/users.db";
-  private final String USERNAME_BY_LOGIN_AND_PASSWORD = "SELECT username FROM users WHERE login = ? AND password = ? AND isdeleted = false";
-  private final String IS_LOGIN_EXISTS = "SELECT login FROM users WHERE login = ?";
-  private final String IS_USERNAME_EXISTS = "SELECT username FROM users WHERE username = ?";
-  private final String GET_USERID_BY_NAME = "SELECT id FROM users WHERE username = ?";
-  private final String GET_ROLEID_BY_ROLENAME = "SELECT id FROM roles WHERE role = ?";
-  private final String DELETE_ROLE_FOR_USER = "DELETE FROM roles_to_users WHERE id_user = ? AND id_role = ?";
-  private final String GET_USER_ROLES_BY_NAME = """
-          SELECT roles.role FROM roles, roles_to_users, users WHERE
-           roles_to_users.id_role = roles.id AND
-           roles_to_users.id_user = users.id AND
-           users.username = ?
-          """;
-  private final String ADD_NEW_USER = """
-          INSERT INTO users
-           (login, password, username, date, isdeleted)
-           VALUES (?, ?, ?, ?, ?)
-           """;
-  private final String ADD_ROLE_TO_USER = """
-          INSERT INTO roles_to_users
-           (id_user, id_role)
-           VALUES (?, ?)
-           """;
+  private final ConnectionPool connectionPool;
+  private final UserStorage userStorage;
 
   public DBProvider(Server server) {
     this.server = server;
+    ServerConfig config = server.getConfig();
+    this.connectionPool = new ConnectionPool(config.getDatabaseUrl(), config.getDatabasePoolSize(),
+            config.getDatabaseTimeoutMillis());
+    UserStorage jdbcUserStorage = new TimedUserStorage(new JdbcUserStorage(connectionPool, server.getMessageClock()),
+            server.getMetrics());
+    this.userStorage = config.getUserCacheSize() > 0
+            ? new CachingUserStorage(jdbcUserStorage, config.getUserCacheSize())
+            : jdbcUserStorage;
+  }
+
+  public UserStorage getUserStorage() {
+    return userStorage;
   }
 
   @Override
@@ -45,6 +32,11 @@ public class DBProvider implements AuthenticationProvider {
     logger.info("Сервис аутентификации запущен: JDBC режим");
   }
 
+  @Override
+  public void close() {
+    connectionPool.close();
+  }
+
   /**
    * Аутентификация пользователя в чате
    *
@@ -55,7 +47,7 @@ public class DBProvider implements AuthenticationProvider {
    */
   @Override
   public boolean authenticate(ClientHandler clientHandler, String login, String password) {
-    String authUsername = getUsernameByLoginAndPassword(login, password);
+    String authUsername = userStorage.getUsernameByLoginAndPassword(login, password);
     if (authUsername == null) {
       clientHandler.sendMessage("Некорректный логин/пароль или пользователя нет в системе");
       return false;
@@ -64,10 +56,17 @@ public class DBProvider implements AuthenticationProvider {
       clientHandler.sendMessage("Указанная учетная запись уже занята");
       return false;
     }
+    clientHandler.setUserRoles(userStorage.getUserRolesByUsername(authUsername));
     clientHandler.setUsername(authUsername);
-    clientHandler.setUserRoles(getUserRolesByUsername(authUsername));
-    server.subscribe(clientHandler);
-    clientHandler.sendMessage("/authok " + authUsername);
+    clientHandler.setAccountName(authUsername);
+    // выполняется в потоке аутентификации, ожидание ответа кластера не задерживает сетевые потоки
+    if (!server.subscribe(clientHandler).join()) {
+      clientHandler.setUsername(null);
+      clientHandler.setAccountName(null);
+      clientHandler.sendMessage("Указанная учетная запись уже занята");
+      return false;
+    }
+    clientHandler.sendAuthOk(authUsername);
     return true;
   }
 
@@ -86,27 +85,25 @@ public class DBProvider implements AuthenticationProvider {
       clientHandler.sendMessage("Логин 3+ символа, Пароль 6+ символов, Имя пользователя 1+ символ");
       return false;
     }
-    if (isLoginAlreadyExists(login)) {
-      clientHandler.sendMessage("Указанный логин уже занят");
-      return false;
-    }
-    if (isUsernameAlreadyExists(username)) {
-      clientHandler.sendMessage("Указанное имя пользователя уже занято");
-      return false;
-    }
 
     if (addNewUser(clientHandler, login, password, username)) {
       clientHandler.setUsername(username);
+      clientHandler.setAccountName(username);
+      if (!server.subscribe(clientHandler).join()) {
+        clientHandler.setUsername(null);
+        clientHandler.setAccountName(null);
+        clientHandler.sendMessage("Указанное имя пользователя уже занято");
+        return false;
+      }
       clientHandler.setUserRole(Role.USER);
-      server.subscribe(clientHandler);
-      clientHandler.sendMessage("/regok " + username);
+      clientHandler.sendRegOk(username);
       return true;
     }
     return false;
   }
 
   /**
-   * Добавление нового пользователя в БД
+   * Добавление нового пользователя с ролью USER в БД
    *
    * @param clientHandler клиент-обработчик
    * @param login         логин пользователя
@@ -115,23 +112,17 @@ public class DBProvider implements AuthenticationProvider {
    * @return true/false успех/неудача
    */
   private boolean addNewUser(ClientHandler clientHandler, String login, String password, String username) {
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(ADD_NEW_USER)) {
-        statement.setString(1, login);
-        statement.setString(2, password);
-        statement.setString(3, username);
-        statement.setString(4, (new SimpleDateFormat("dd.MM.yyyy")).format(new Date(System.currentTimeMillis())));
-        statement.setBoolean(5, false);
-        if (statement.executeUpdate() == 0) {
-          clientHandler.sendMessage("Не удалось добавить пользователя в базу данных.");
-          return false;
-        }
+    switch (userStorage.addNewUser(login, password, username)) {
+      case SUCCESS -> {
+        clientHandler.sendMessage("Для пользователя " + username + " добавлена роль '" + Role.USER.name() + "'");
+        return true;
       }
-    } catch (SQLException e) {
-      logger.error("Ошибка при добавлении нового пользователя в базу данных", e);
-      throw new RuntimeException(e);
+      case LOGIN_EXISTS -> clientHandler.sendMessage("Указанный логин уже занят");
+      case USERNAME_EXISTS -> clientHandler.sendMessage("Указанное имя пользователя уже занято");
+      case ROLE_NOT_FOUND -> clientHandler.sendMessage("Роль '" + Role.USER.name() + "' не найдена в базе данных");
+      case FAILED -> clientHandler.sendMessage("Не удалось добавить пользователя в базу данных.");
     }
-    return addRoleToUserByUsername(clientHandler, username, Role.USER.name());
+    return false;
   }
 
   /**
@@ -144,176 +135,23 @@ public class DBProvider implements AuthenticationProvider {
    */
   private boolean addRoleToUserByUsername(ClientHandler clientHandler, String username, String role) {
     int id_user;
-    if ((id_user = getUserIdByName(username)) < 0) {
+    if ((id_user = userStorage.getUserIdByName(username)) < 0) {
       clientHandler.sendMessage("Пользователь по имени " + username + " не найден в базе данных");
       return false;
     }
     int id_role;
-    if ((id_role = getRoleIdByRolename(role)) < 0) {
+    if ((id_role = userStorage.getRoleIdByRolename(role)) < 0) {
       clientHandler.sendMessage("Роль '" + role.toUpperCase() + "' не найдена в базе данных");
       return false;
     }
 
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(ADD_ROLE_TO_USER)) {
-        statement.setInt(1, id_user);
-        statement.setInt(2, id_role);
-        if (statement.executeUpdate() != 0) {
-          clientHandler.sendMessage("Для пользователя " + username + " добавлена роль '" + role.toUpperCase() + "'");
-          return true;
-        } else {
-          return false;
-        }
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при добавлении новой роли для нового пользователя в базу данных", e);
-      throw new RuntimeException(e);
-    }
-  }
-
-  /**
-   * Получить id роли по названию rolename
-   *
-   * @param name имя роли
-   * @return id идентификатор роли
-   */
-  private int getRoleIdByRolename(String name) {
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(GET_ROLEID_BY_ROLENAME)) {
-        statement.setString(1, name.toUpperCase());
-        try (ResultSet resultSet = statement.executeQuery()) {
-          if (resultSet.next()) {
-            int id_role = resultSet.getInt("id");
-            return id_role;
-          } else {
-            return -1;
-          }
-        }
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при добавлении нового пользователя в базу данных", e);
-      throw new RuntimeException(e);
-    }
-  }
-
-  /**
-   * Получить id пользователя по его имени
-   *
-   * @param username имя пользователя
-   * @return id идентификатор пользователя
-   */
-  private int getUserIdByName(String username) {
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(GET_USERID_BY_NAME)) {
-        statement.setString(1, username);
-        try (ResultSet resultSet = statement.executeQuery()) {
-          if (resultSet.next()) {
-            int id_user = resultSet.getInt("id");
-            return id_user;
-          } else {
-            return -1;
-          }
-        }
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при получении id пользователя по его имени из БД", e);
-      throw new RuntimeException(e);
-    }
-  }
-
-  /**
-   * Получение имени ползователя по логину и паролю
-   *
-   * @param login    логин
-   * @param password пароль
-   * @return имя пользователя/null
-   */
-  private String getUsernameByLoginAndPassword(String login, String password) {
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(USERNAME_BY_LOGIN_AND_PASSWORD)) {
-        statement.setString(1, login);
-        statement.setString(2, password);
-        try (ResultSet resultSet = statement.executeQuery()) {
-          if (resultSet.next()) {
-            return resultSet.getString("username");
-          } else {
-            return null;
-          }
-        }
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при получение имени ползователя по логину и паролю из БД", e);
-      throw new RuntimeException(e);
-    }
-  }
-
-  /**
-   * Проверка на уже существование логина
-   *
-   * @param login логин
-   * @return true/false существует/не существует
-   */
-  private boolean isLoginAlreadyExists(String login) {
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(IS_LOGIN_EXISTS)) {
-        statement.setString(1, login);
-        try (ResultSet resultSet = statement.executeQuery()) {
-          return resultSet.next();
-        }
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при проверке наличия логина в БД", e);
-      throw new RuntimeException(e);
-    }
-  }
-
-  /**
-   * Проверка на уже существование имени ползователя
-   *
-   * @param username имя пользователя
-   * @return true/false существует/не существует
-   */
-  private boolean isUsernameAlreadyExists(String username) {
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(IS_USERNAME_EXISTS)) {
-        statement.setString(1, username);
-        try (ResultSet resultSet = statement.executeQuery()) {
-          return resultSet.next();
-        }
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при проверке на существование имени ползователя в БД", e);
-      throw new RuntimeException(e);
-    }
-  }
-
-  /**
-   * Получение списка ролей пользователя по его имени
-   *
-   * @param name имя пользователя
-   * @return список ролей
-   */
-  private List<Role> getUserRolesByUsername(String name) {
-    List<Role> roles = new ArrayList<>();
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(GET_USER_ROLES_BY_NAME)) {
-        statement.setString(1, name);
-        try (ResultSet resultSet = statement.executeQuery()) {
-          while (resultSet.next()) {
-            String role = resultSet.getString("role");
-            for (Role r : Role.values()) {
-              if (r.name().equalsIgnoreCase(role)) {
-                roles.add(r);
-                break;
-              }
-            }
-          }
-          return roles;
-        }
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при получении списка ролей пользователя по его имени из БД", e);
-      throw new RuntimeException(e);
+    if (userStorage.addRoleToUser(username, id_user, id_role)) {
+      clientHandler.sendMessage("Для пользователя " + username + " добавлена роль '" + role.toUpperCase() + "'");
+      server.recordEvent(ChatEvent.roleAdded(clientHandler.getUsername(), username, role.toUpperCase()));
+      server.getSessionManager().invalidateUser(username);
+      return true;
+    } else {
+      return false;
     }
   }
 
@@ -327,8 +165,8 @@ public class DBProvider implements AuthenticationProvider {
    */
   @Override
   public boolean addRoleToUser(ClientHandler clientHandler, String username, String role) {
-    if (getUserIdByName(username) > -1) {
-      List<Role> roles = getUserRolesByUsername(username);
+    if (userStorage.getUserIdByName(username) > -1) {
+      List<Role> roles = userStorage.getUserRolesByUsername(username);
       for (Role r : roles) {
         if (r.name().equalsIgnoreCase(role)) {
           clientHandler.sendMessage("У пользователя " + username + " есть роль '" + role.toUpperCase() + "'");
@@ -344,15 +182,17 @@ public class DBProvider implements AuthenticationProvider {
 
   @Override
   public boolean delRoleForUser(ClientHandler clientHandler, String username, String role) {
-    int id_user = getUserIdByName(username);
+    int id_user = userStorage.getUserIdByName(username);
     if (id_user > -1) {
-      int id_role = getRoleIdByRolename(role);
+      int id_role = userStorage.getRoleIdByRolename(role);
       if (id_role > -1) {
-        List<Role> roles = getUserRolesByUsername(username);
+        List<Role> roles = userStorage.getUserRolesByUsername(username);
         for (Role r : roles) {
           if (r.name().equalsIgnoreCase(role)) {
-            if (delRoleToUserByUsername(id_user, id_role)) {
+            if (userStorage.deleteRoleForUser(username, id_user, id_role)) {
               clientHandler.sendMessage("У пользователя " + username + " удалена роль '" + role.toUpperCase() + "'");
+              server.recordEvent(ChatEvent.roleRemoved(clientHandler.getUsername(), username, role.toUpperCase()));
+              server.getSessionManager().invalidateUser(username);
               return true;
             } else {
               return false;
@@ -368,17 +208,4 @@ public class DBProvider implements AuthenticationProvider {
     clientHandler.sendMessage("Нет пользователя " + username + " в базе данных");
     return false;
   }
-
-  private boolean delRoleToUserByUsername(int id_user, int id_role) {
-    try (Connection connection = DriverManager.getConnection(DATABASE_URL)) {
-      try (PreparedStatement statement = connection.prepareStatement(DELETE_ROLE_FOR_USER)) {
-        statement.setInt(1, id_user);
-        statement.setInt(2, id_role);
-        return statement.executeUpdate() > 0;
-      }
-    } catch (SQLException e) {
-      logger.error("Ошибка при удалении роли у пользователя с заданным именем из БД", e);
-      throw new RuntimeException(e);
-    }
-  }
-}
\ No newline at end of file
+}
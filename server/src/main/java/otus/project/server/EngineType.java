@@ -0,0 +1,7 @@
+package otus.project.server;
+
+public enum EngineType {
+  BLOCKING,
+  VIRTUAL,
+  NIO,
+}
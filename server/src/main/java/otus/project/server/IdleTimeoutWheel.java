@@ -0,0 +1,114 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Отключение неактивных клиентов по хешированному колесу таймеров.
+ * Клиент кладется в ячейку колеса, соответствующую сроку его неактивности. Активность клиента
+ * только обновляет время последнего действия, а перенос в новую ячейку выполняется лениво,
+ * когда до клиента доходит колесо. Поэтому за один шаг просматриваются только клиенты текущей ячейки,
+ * а не все подключения
+ */
+public class IdleTimeoutWheel {
+  private static final Logger logger = LogManager.getLogger(IdleTimeoutWheel.class.getName());
+  private final long timeoutMillis;
+  private final long tickMillis;
+  private final Queue<ClientHandler>[] buckets;
+  private final int mask;
+  private final Consumer<ClientHandler> onExpired;
+  private final Thread worker;
+  private final long startTime;
+  private volatile boolean isRunning;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public IdleTimeoutWheel(long timeoutMillis, long tickMillis, Consumer<ClientHandler> onExpired) {
+    this.timeoutMillis = timeoutMillis;
+    this.tickMillis = tickMillis;
+    int size = Integer.highestOneBit((int) Math.min(timeoutMillis / tickMillis + 1, 1 << 20));
+    size = size << 1;
+    this.buckets = new Queue[size];
+    for (int i = 0; i < size; i++) {
+      buckets[i] = new ConcurrentLinkedQueue<>();
+    }
+    this.mask = size - 1;
+    this.onExpired = onExpired;
+    this.worker = new Thread(this::run, "idle-timeout-wheel");
+    this.worker.setDaemon(true);
+    this.startTime = System.currentTimeMillis();
+  }
+
+  public void start() {
+    isRunning = true;
+    worker.start();
+  }
+
+  public void close() {
+    isRunning = false;
+    worker.interrupt();
+  }
+
+  /**
+   * Постановка клиента на контроль неактивности
+   *
+   * @param clientHandler клиент-обработчик
+   */
+  public void schedule(ClientHandler clientHandler) {
+    schedule(clientHandler, clientHandler.getLastActive() + timeoutMillis, System.currentTimeMillis());
+  }
+
+  private void schedule(ClientHandler clientHandler, long deadline, long now) {
+    long tick = toTick(Math.max(deadline, now + tickMillis));
+    long maxTick = toTick(now) + mask;
+    buckets[(int) (Math.min(tick, maxTick) & mask)].add(clientHandler);
+  }
+
+  private long toTick(long time) {
+    return (time - startTime + tickMillis - 1) / tickMillis;
+  }
+
+  private void run() {
+    long tick = toTick(System.currentTimeMillis());
+    while (isRunning) {
+      try {
+        long sleep = startTime + tick * tickMillis - System.currentTimeMillis();
+        if (sleep > 0) {
+          Thread.sleep(sleep);
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        expire(buckets[(int) (tick & mask)], System.currentTimeMillis());
+      } catch (RuntimeException e) {
+        logger.error("Ошибка при проверке активности клиентов", e);
+      }
+      tick++;
+    }
+  }
+
+  /**
+   * Обработка ячейки колеса: истекшие клиенты отключаются, активные переносятся в ячейку нового срока
+   */
+  private void expire(Queue<ClientHandler> bucket, long now) {
+    for (int count = bucket.size(); count > 0; count--) {
+      ClientHandler clientHandler = bucket.poll();
+      if (clientHandler == null) {
+        return;
+      }
+      if (clientHandler.isDisconnected()) {
+        continue;
+      }
+      long deadline = clientHandler.getLastActive() + timeoutMillis;
+      if (deadline <= now) {
+        onExpired.accept(clientHandler);
+      } else {
+        schedule(clientHandler, deadline, now);
+      }
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Хранилище пользователей в SQLite через пул соединений
+ */
+public class JdbcUserStorage implements UserStorage {
+  private static final Logger logger = LogManager.getLogger(JdbcUserStorage.class.getName());
+  private final ConnectionPool connectionPool;
+  private final MessageClock messageClock;
+
+  private final String USERNAME_BY_LOGIN_AND_PASSWORD = "SELECT username FROM users WHERE login = ? AND password = ? AND isdeleted = false";
+  private final String GET_USERID_BY_NAME = "SELECT id FROM users WHERE username = ?";
+  private final String GET_ROLEID_BY_ROLENAME = "SELECT id FROM roles WHERE role = ?";
+  private final String DELETE_ROLE_FOR_USER = "DELETE FROM roles_to_users WHERE id_user = ? AND id_role = ?";
+  private final String GET_USER_ROLES_BY_NAME = """
+          SELECT roles.role FROM roles, roles_to_users, users WHERE
+           roles_to_users.id_role = roles.id AND
+           roles_to_users.id_user = users.id AND
+           users.username = ?
+          """;
+  private final String ADD_NEW_USER = """
+          INSERT INTO users
+           (login, password, username, date, isdeleted)
+           VALUES (?, ?, ?, ?, ?)
+          """;
+  private final String ADD_ROLE_TO_USER = """
+          INSERT INTO roles_to_users
+           (id_user, id_role)
+           VALUES (?, ?)
+          """;
+  private final String ADD_ROLE_TO_USER_BY_ROLENAME = """
+          INSERT INTO roles_to_users
+           (id_user, id_role)
+           SELECT ?, id FROM roles WHERE role = ?
+          """;
+
+  public JdbcUserStorage(ConnectionPool connectionPool, MessageClock messageClock) {
+    this.connectionPool = connectionPool;
+    this.messageClock = messageClock;
+  }
+
+  /**
+   * Получение имени ползователя по логину и паролю
+   *
+   * @param login    логин
+   * @param password пароль
+   * @return имя пользователя/null
+   */
+  @Override
+  public String getUsernameByLoginAndPassword(String login, String password) {
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(USERNAME_BY_LOGIN_AND_PASSWORD);
+      statement.setString(1, login);
+      statement.setString(2, password);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          return resultSet.getString("username");
+        } else {
+          return null;
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("Ошибка при получение имени ползователя по логину и паролю из БД", e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Получить id пользователя по его имени
+   *
+   * @param username имя пользователя
+   * @return id идентификатор пользователя
+   */
+  @Override
+  public int getUserIdByName(String username) {
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(GET_USERID_BY_NAME);
+      statement.setString(1, username);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          int id_user = resultSet.getInt("id");
+          return id_user;
+        } else {
+          return -1;
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("Ошибка при получении id пользователя по его имени из БД", e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Получить id роли по названию rolename
+   *
+   * @param name имя роли
+   * @return id идентификатор роли
+   */
+  @Override
+  public int getRoleIdByRolename(String name) {
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(GET_ROLEID_BY_ROLENAME);
+      statement.setString(1, name.toUpperCase());
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          int id_role = resultSet.getInt("id");
+          return id_role;
+        } else {
+          return -1;
+        }
+      }
+    } catch (SQLException e) {
+      logger.error("Ошибка при получении id роли по ее названию из БД", e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Получение списка ролей пользователя по его имени
+   *
+   * @param name имя пользователя
+   * @return список ролей
+   */
+  @Override
+  public List<Role> getUserRolesByUsername(String name) {
+    List<Role> roles = new ArrayList<>();
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(GET_USER_ROLES_BY_NAME);
+      statement.setString(1, name);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          String role = resultSet.getString("role");
+          for (Role r : Role.values()) {
+            if (r.name().equalsIgnoreCase(role)) {
+              roles.add(r);
+              break;
+            }
+          }
+        }
+        return roles;
+      }
+    } catch (SQLException e) {
+      logger.error("Ошибка при получении списка ролей пользователя по его имени из БД", e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Добавление нового пользователя с ролью USER в БД одной транзакцией.
+   * Занятость логина и имени определяется по нарушению уникальности, а не предварительными запросами
+   *
+   * @param login    логин пользователя
+   * @param password пароль пользователя
+   * @param username имя пользователя
+   * @return результат добавления
+   */
+  @Override
+  public RegistrationStatus addNewUser(String login, String password, String username) {
+    try (PooledConnection pooledConnection = connectionPool.acquire()) {
+      Connection connection = pooledConnection.getConnection();
+      connection.setAutoCommit(false);
+      try {
+        PreparedStatement statement = pooledConnection.prepareStatement(ADD_NEW_USER, Statement.RETURN_GENERATED_KEYS);
+        statement.setString(1, login);
+        statement.setString(2, password);
+        statement.setString(3, username);
+        statement.setString(4, messageClock.getDate());
+        statement.setBoolean(5, false);
+        statement.executeUpdate();
+        int id_user;
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+          if (!keys.next()) {
+            connection.rollback();
+            return RegistrationStatus.FAILED;
+          }
+          id_user = keys.getInt(1);
+        }
+        PreparedStatement roleStatement = pooledConnection.prepareStatement(ADD_ROLE_TO_USER_BY_ROLENAME);
+        roleStatement.setInt(1, id_user);
+        roleStatement.setString(2, Role.USER.name());
+        if (roleStatement.executeUpdate() == 0) {
+          connection.rollback();
+          return RegistrationStatus.ROLE_NOT_FOUND;
+        }
+        connection.commit();
+        return RegistrationStatus.SUCCESS;
+      } catch (SQLException e) {
+        connection.rollback();
+        if (e instanceof SQLiteException sqLiteException
+                && sqLiteException.getResultCode() == SQLiteErrorCode.SQLITE_CONSTRAINT_UNIQUE) {
+          return e.getMessage().contains("users.login")
+                  ? RegistrationStatus.LOGIN_EXISTS : RegistrationStatus.USERNAME_EXISTS;
+        }
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      logger.error("Ошибка при добавлении нового пользователя в базу данных", e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public boolean addRoleToUser(String username, int id_user, int id_role) {
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(ADD_ROLE_TO_USER);
+      statement.setInt(1, id_user);
+      statement.setInt(2, id_role);
+      return statement.executeUpdate() != 0;
+    } catch (SQLException e) {
+      logger.error("Ошибка при добавлении новой роли для пользователя в базу данных", e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public boolean deleteRoleForUser(String username, int id_user, int id_role) {
+    try (PooledConnection connection = connectionPool.acquire()) {
+      PreparedStatement statement = connection.prepareStatement(DELETE_ROLE_FOR_USER);
+      statement.setInt(1, id_user);
+      statement.setInt(2, id_role);
+      return statement.executeUpdate() > 0;
+    } catch (SQLException e) {
+      logger.error("Ошибка при удалении роли у пользователя с заданным именем из БД", e);
+      throw new RuntimeException(e);
+    }
+  }
+}
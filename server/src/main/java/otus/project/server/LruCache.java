@@ -0,0 +1,85 @@
+package otus.project.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш ограниченного размера с вытеснением давно не использованных записей и счетчиками попаданий/промахов
+ *
+ * @param <K> ключ
+ * @param <V> значение
+ */
+public class LruCache<K, V> {
+  private final LinkedHashMap<K, V> entries;
+  private final ReentrantLock lock;
+  private final LongAdder hits;
+  private final LongAdder misses;
+
+  public LruCache(int maxSize) {
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+    this.lock = new ReentrantLock();
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  /**
+   * @return значение/null если записи нет в кэше
+   */
+  public V get(K key) {
+    V value;
+    lock.lock();
+    try {
+      value = entries.get(key);
+    } finally {
+      lock.unlock();
+    }
+    if (value == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return value;
+  }
+
+  public void put(K key, V value) {
+    lock.lock();
+    try {
+      entries.put(key, value);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void invalidate(K key) {
+    lock.lock();
+    try {
+      entries.remove(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+}
@@ -0,0 +1,63 @@
+package otus.project.server;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Общий источник отметок времени с точностью до секунды для сообщений чата и даты регистрации.
+ * Отформатированные строки хранятся для текущей секунды и пересчитываются при первом обращении в новой секунде,
+ * поэтому в остальных случаях получение отметки - это чтение часов и одно volatile-чтение
+ */
+public class MessageClock {
+  private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+  private final Clock clock;
+  private final AtomicReference<Snapshot> snapshot;
+
+  public MessageClock() {
+    this(Clock.systemDefaultZone());
+  }
+
+  public MessageClock(Clock clock) {
+    this.clock = clock;
+    this.snapshot = new AtomicReference<>(format(clock.millis() / 1000L));
+  }
+
+  /**
+   * Префикс сообщения вида "(HH:mm:ss) "
+   */
+  public String getTimePrefix() {
+    return current().timePrefix();
+  }
+
+  /**
+   * Текущая дата вида dd.MM.yyyy
+   */
+  public String getDate() {
+    return current().date();
+  }
+
+  private Snapshot current() {
+    long second = clock.millis() / 1000L;
+    Snapshot current = snapshot.get();
+    if (current.second() == second) {
+      return current;
+    }
+    Snapshot next = format(second);
+    if (next.second() > current.second()) {
+      snapshot.compareAndSet(current, next);
+    }
+    return next;
+  }
+
+  private Snapshot format(long second) {
+    LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), clock.getZone());
+    return new Snapshot(second, "(" + TIME_FORMAT.format(dateTime) + ") ", DATE_FORMAT.format(dateTime));
+  }
+
+  private record Snapshot(long second, String timePrefix, String date) {
+  }
+}
@@ -0,0 +1,105 @@
+package otus.project.server;
+
+import otus.project.common.BinaryFrame;
+import otus.project.common.MessageType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Закодированное сообщение в формате DataOutputStream.writeUTF: 2 байта длины + modified UTF-8,
+ * или кадр двоичного протокола. Кадр неизменяемый, поэтому при рассылке он кодируется один раз
+ * для каждого протокола и отправляется всем получателям
+ */
+public final class MessageFrame {
+  private static final int MAX_PAYLOAD_LENGTH = 65535;
+  private final byte[] bytes;
+  private final ByteBuffer buffer;
+  private final String message;
+  private volatile MessageFrame binaryFrame;
+
+  private MessageFrame(byte[] bytes, String message) {
+    this.bytes = bytes;
+    this.buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    this.message = message;
+  }
+
+  /**
+   * Кодирование кадра двоичного протокола
+   *
+   * @param type   тип кадра
+   * @param fields поля
+   * @return кадр
+   */
+  public static MessageFrame binary(byte type, String... fields) {
+    return new MessageFrame(BinaryFrame.encode(type, fields), null);
+  }
+
+  /**
+   * Это же текстовое сообщение в виде кадра TEXT двоичного протокола, кодируется при первом обращении
+   */
+  public MessageFrame toBinary() {
+    MessageFrame frame = binaryFrame;
+    if (frame == null) {
+      frame = binary(MessageType.TEXT, message);
+      binaryFrame = frame;
+    }
+    return frame;
+  }
+
+  /**
+   * Кодирование сообщения
+   *
+   * @param message сообщение
+   * @return кадр
+   * @throws UTFDataFormatException сообщение длиннее 65535 байт
+   */
+  public static MessageFrame of(String message) throws UTFDataFormatException {
+    int length = message.length();
+    int payloadLength = length;
+    for (int i = 0; i < length; i++) {
+      char c = message.charAt(i);
+      if (c >= 0x80 || c == 0) {
+        payloadLength += (c >= 0x800) ? 2 : 1;
+      }
+    }
+    if (payloadLength > MAX_PAYLOAD_LENGTH) {
+      throw new UTFDataFormatException("Сообщение слишком длинное: " + payloadLength + " байт");
+    }
+    byte[] bytes = new byte[payloadLength + 2];
+    bytes[0] = (byte) (payloadLength >>> 8);
+    bytes[1] = (byte) payloadLength;
+    int position = 2;
+    for (int i = 0; i < length; i++) {
+      char c = message.charAt(i);
+      if (c < 0x80 && c != 0) {
+        bytes[position++] = (byte) c;
+      } else if (c >= 0x800) {
+        bytes[position++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+        bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      } else {
+        bytes[position++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return new MessageFrame(bytes, message);
+  }
+
+  /**
+   * Буфер только для чтения с собственной позицией поверх общих байтов кадра
+   */
+  public ByteBuffer asByteBuffer() {
+    return buffer.duplicate();
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes);
+  }
+
+  public int size() {
+    return bytes.length;
+  }
+}
@@ -0,0 +1,248 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otus.project.common.BinaryFrame;
+import otus.project.server.jfr.PipelineTracing;
+import otus.project.server.jfr.WriteEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Неблокирующее подключение клиента. Чтение и запись выполняются в потоке своего event loop,
+ * исходящие сообщения забираются из очереди клиента-обработчика
+ */
+public class NioClientConnection implements ClientConnection {
+  private static final Logger logger = LogManager.getLogger(NioClientConnection.class.getName());
+  private static final int INITIAL_READ_BUFFER_SIZE = 512;
+  private static final int LENGTH_FIELD_SIZE = 2;
+  private static final int MAX_GATHERED_FRAMES = 16;
+  private final NioEventLoop eventLoop;
+  private final SocketChannel channel;
+  private final SelectionKey key;
+  private final AtomicBoolean isFlushScheduled;
+  private ByteBuffer readBuffer;
+  private final ByteBuffer[] writeBuffers;
+  private int writeOffset;
+  private int writeCount;
+  private ClientHandler clientHandler;
+  private boolean isBinaryProtocol;
+  private boolean isClosing;
+  private boolean isClosed;
+
+  public NioClientConnection(NioEventLoop eventLoop, SocketChannel channel, SelectionKey key) {
+    this.eventLoop = eventLoop;
+    this.channel = channel;
+    this.key = key;
+    this.isFlushScheduled = new AtomicBoolean();
+    this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    this.writeBuffers = new ByteBuffer[MAX_GATHERED_FRAMES];
+  }
+
+  public void setClientHandler(ClientHandler clientHandler) {
+    this.clientHandler = clientHandler;
+  }
+
+  @Override
+  public void onMessageQueued() {
+    if (eventLoop.inEventLoop()) {
+      flush();
+    } else if (isFlushScheduled.compareAndSet(false, true)) {
+      eventLoop.execute(() -> {
+        isFlushScheduled.set(false);
+        flush();
+      });
+    }
+  }
+
+  @Override
+  public void useBinaryProtocol() {
+    isBinaryProtocol = true;
+  }
+
+  @Override
+  public void close() {
+    if (eventLoop.inEventLoop()) {
+      closeAfterFlush();
+    } else {
+      eventLoop.execute(this::closeAfterFlush);
+    }
+  }
+
+  @Override
+  public void abort() {
+    eventLoop.execute(this::closeNow);
+  }
+
+  /**
+   * Чтение доступных данных из канала и разбор всех полностью полученных сообщений
+   */
+  void onReadable() {
+    try {
+      if (channel.read(readBuffer) < 0) {
+        closeNow();
+        return;
+      }
+    } catch (IOException e) {
+      logger.error("Ошибка при получении сообщения от клиента из входящего потока", e);
+      closeNow();
+      return;
+    }
+    readBuffer.flip();
+    try {
+      while (!isClosing && !isClosed) {
+        int frameSize = frameSize();
+        if (frameSize < 0 || readBuffer.remaining() < frameSize) {
+          break;
+        }
+        if (!handleFrame(frameSize)) {
+          closeAfterFlush();
+        }
+      }
+      prepareReadBuffer();
+    } catch (IOException e) {
+      logger.error("Некорректное сообщение от клиента", e);
+      closeNow();
+    } catch (RuntimeException e) {
+      logger.error("Ошибка при обработке сообщения от клиента", e);
+      closeNow();
+    }
+  }
+
+  /**
+   * Размер очередного сообщения в буфере чтения в текущем протоколе
+   *
+   * @return размер сообщения или -1, если его заголовок получен не полностью
+   */
+  private int frameSize() throws IOException {
+    if (isBinaryProtocol) {
+      return BinaryFrame.frameSize(readBuffer);
+    }
+    if (readBuffer.remaining() < LENGTH_FIELD_SIZE) {
+      return -1;
+    }
+    return LENGTH_FIELD_SIZE + Short.toUnsignedInt(readBuffer.getShort(readBuffer.position()));
+  }
+
+  /**
+   * Разбор и обработка сообщения, полностью находящегося в буфере чтения
+   *
+   * @return true/false продолжать/завершить работу с клиентом
+   */
+  private boolean handleFrame(int frameSize) throws IOException {
+    if (isBinaryProtocol) {
+      return clientHandler.handleFrame(BinaryFrame.decode(readBuffer));
+    }
+    String message = new DataInputStream(new ByteArrayInputStream(
+            readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), frameSize)).readUTF();
+    readBuffer.position(readBuffer.position() + frameSize);
+    return clientHandler.handleMessage(message);
+  }
+
+  /**
+   * Подготовка буфера к следующему чтению: буфер растет под длинное сообщение
+   * и возвращается к исходному размеру, когда в нем не осталось данных
+   */
+  private void prepareReadBuffer() throws IOException {
+    if (!readBuffer.hasRemaining() && readBuffer.capacity() > INITIAL_READ_BUFFER_SIZE) {
+      readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+      return;
+    }
+    int frameSize = frameSize();
+    if (frameSize > readBuffer.capacity()) {
+      ByteBuffer buffer = ByteBuffer.allocate(frameSize);
+      buffer.put(readBuffer);
+      readBuffer = buffer;
+      return;
+    }
+    readBuffer.compact();
+  }
+
+  void onWritable() {
+    flush();
+  }
+
+  /**
+   * Запись сообщений из исходящей очереди клиента, пока сокет их принимает.
+   * Несколько кадров отправляются одной записью (gathering write), недописанные
+   * остаются в writeBuffers до следующего OP_WRITE
+   */
+  private void flush() {
+    if (isClosed) {
+      return;
+    }
+    OutboundQueue outboundQueue = clientHandler.getOutboundQueue();
+    WriteEvent event = new WriteEvent();
+    event.begin();
+    int frames = 0;
+    long bytes = 0;
+    try {
+      while (true) {
+        if (writeCount == 0) {
+          writeOffset = 0;
+          MessageFrame frame;
+          while (writeCount < MAX_GATHERED_FRAMES && (frame = outboundQueue.poll()) != null) {
+            writeBuffers[writeCount++] = frame.asByteBuffer();
+          }
+          if (writeCount == 0) {
+            break;
+          }
+        }
+        bytes += channel.write(writeBuffers, writeOffset, writeCount);
+        while (writeCount > 0 && !writeBuffers[writeOffset].hasRemaining()) {
+          writeBuffers[writeOffset++] = null;
+          writeCount--;
+          frames++;
+        }
+        if (writeCount > 0) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+          commitWrite(event, frames, bytes);
+          return;
+        }
+      }
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      commitWrite(event, frames, bytes);
+    } catch (IOException e) {
+      logger.error("Ошибка при отправке сообщения клиенту в исходящий поток", e);
+      closeNow();
+      return;
+    }
+    if (isClosing) {
+      closeNow();
+    }
+  }
+
+  private void commitWrite(WriteEvent event, int frames, long bytes) {
+    if (bytes > 0 && event.shouldCommit() && PipelineTracing.isSampled()) {
+      event.username = clientHandler.getUsername();
+      event.frames = frames;
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
+  private void closeAfterFlush() {
+    isClosing = true;
+    flush();
+  }
+
+  void closeNow() {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    key.cancel();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.error("Ошибка при закрытии сокета", e);
+    }
+    clientHandler.disconnect();
+  }
+}
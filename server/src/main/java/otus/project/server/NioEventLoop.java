@@ -0,0 +1,123 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Поток с собственным Selector, обслуживающий чтение и запись для части подключений.
+ * Все операции с каналами выполняются только в этом потоке, другие потоки передают ему задачи
+ */
+public class NioEventLoop implements Runnable {
+  private static final Logger logger = LogManager.getLogger(NioEventLoop.class.getName());
+  private final Server server;
+  private final Selector selector;
+  private final Queue<Runnable> tasks;
+  private final Thread thread;
+  private volatile boolean isRunning;
+
+  public NioEventLoop(Server server, String name) throws IOException {
+    this.server = server;
+    this.selector = Selector.open();
+    this.tasks = new ConcurrentLinkedQueue<>();
+    this.thread = new Thread(this, name);
+    this.isRunning = true;
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  public void stop() {
+    isRunning = false;
+    selector.wakeup();
+  }
+
+  public boolean inEventLoop() {
+    return Thread.currentThread() == thread;
+  }
+
+  /**
+   * Выполнить задачу в потоке event loop
+   *
+   * @param task задача
+   */
+  public void execute(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  public void register(SocketChannel channel) {
+    execute(() -> {
+      try {
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        NioClientConnection connection = new NioClientConnection(this, channel, key);
+        connection.setClientHandler(new ClientHandler(server, connection));
+        key.attach(connection);
+      } catch (IOException e) {
+        logger.error("Ошибка при регистрации нового подключения", e);
+        try {
+          channel.close();
+        } catch (IOException ex) {
+          logger.error("Ошибка при закрытии сокета", ex);
+        }
+      }
+    });
+  }
+
+  @Override
+  public void run() {
+    while (isRunning) {
+      try {
+        selector.select();
+        runTasks();
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+          SelectionKey key = iterator.next();
+          iterator.remove();
+          NioClientConnection connection = (NioClientConnection) key.attachment();
+          if (connection == null || !key.isValid()) {
+            continue;
+          }
+          if (key.isReadable()) {
+            connection.onReadable();
+          }
+          if (key.isValid() && key.isWritable()) {
+            connection.onWritable();
+          }
+        }
+      } catch (Exception e) {
+        logger.error("Ошибка в цикле обработки событий {}", thread.getName(), e);
+      }
+    }
+    for (SelectionKey key : selector.keys()) {
+      if (key.attachment() instanceof NioClientConnection connection) {
+        connection.closeNow();
+      }
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      logger.error("Ошибка при закрытии selector", e);
+    }
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (Exception e) {
+        logger.error("Ошибка при выполнении задачи в цикле обработки событий", e);
+      }
+    }
+  }
+}
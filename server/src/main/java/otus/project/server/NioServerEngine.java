@@ -0,0 +1,56 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Движок на java.nio: подключения принимаются в потоке сервера и распределяются
+ * по кругу между небольшим количеством потоков event loop, каждый со своим Selector
+ */
+public class NioServerEngine implements ServerEngine {
+  private static final Logger logger = LogManager.getLogger(NioServerEngine.class.getName());
+  private final int port;
+  private final NioEventLoop[] eventLoops;
+  private ServerSocketChannel serverChannel;
+
+  public NioServerEngine(int port, int threads) {
+    this.port = port;
+    this.eventLoops = new NioEventLoop[Math.max(1, threads)];
+  }
+
+  @Override
+  public void start(Server server) throws IOException {
+    for (int i = 0; i < eventLoops.length; i++) {
+      eventLoops[i] = new NioEventLoop(server, "nio-event-loop-" + i);
+      eventLoops[i].start();
+    }
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(port), 1024);
+    logger.info("Сервер запущен на порту: {} (nio, потоков: {})", port, eventLoops.length);
+    int next = 0;
+    while (true) {
+      SocketChannel channel = serverChannel.accept();
+      eventLoops[next].register(channel);
+      next = (next + 1) % eventLoops.length;
+    }
+  }
+
+  @Override
+  public void stop() {
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      logger.error("Не удалось закрыть serverChannel ", e);
+    }
+    for (NioEventLoop eventLoop : eventLoops) {
+      if (eventLoop != null) {
+        eventLoop.stop();
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package otus.project.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ограниченная очередь исходящих сообщений клиента.
+ * Отправитель только добавляет сообщение в очередь, запись в сокет выполняет транспорт клиента,
+ * поэтому медленный клиент задерживает только свою очередь
+ */
+public class OutboundQueue {
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+  private final ArrayDeque<MessageFrame> messages;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final AtomicLong droppedCount;
+  private int highWatermark;
+  private boolean isClosed;
+
+  public OutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+    this.droppedCount = new AtomicLong();
+    this.messages = new ArrayDeque<>();
+    this.lock = new ReentrantLock();
+    this.notEmpty = lock.newCondition();
+  }
+
+  /**
+   * Добавление сообщения в очередь. При заполненной очереди срабатывает политика переполнения:
+   * DROP_OLDEST освобождает место, DROP_NEW и DISCONNECT отбрасывают новое сообщение
+   *
+   * @param frame закодированное сообщение
+   * @return true/false сообщение добавлено/отброшено
+   */
+  public boolean offer(MessageFrame frame) {
+    lock.lock();
+    try {
+      if (isClosed) {
+        return false;
+      }
+      if (messages.size() >= capacity) {
+        droppedCount.incrementAndGet();
+        if (overflowPolicy != OverflowPolicy.DROP_OLDEST) {
+          return false;
+        }
+        messages.pollFirst();
+      }
+      messages.addLast(frame);
+      if (messages.size() > highWatermark) {
+        highWatermark = messages.size();
+      }
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Получение сообщения без ожидания
+   *
+   * @return сообщение/null если очередь пуста
+   */
+  public MessageFrame poll() {
+    lock.lock();
+    try {
+      return messages.pollFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Получение сообщения с ожиданием его появления
+   *
+   * @return сообщение/null если очередь закрыта и в ней не осталось сообщений
+   */
+  public MessageFrame take() throws InterruptedException {
+    lock.lock();
+    try {
+      while (messages.isEmpty()) {
+        if (isClosed) {
+          return null;
+        }
+        notEmpty.await();
+      }
+      return messages.pollFirst();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return messages.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Максимальная глубина очереди за время работы клиента
+   */
+  public int getHighWatermark() {
+    lock.lock();
+    try {
+      return highWatermark;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Количество сообщений, отброшенных из-за переполнения очереди
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public boolean isEmpty() {
+    lock.lock();
+    try {
+      return messages.isEmpty();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isClosed() {
+    lock.lock();
+    try {
+      return isClosed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Закрытие очереди: новые сообщения не принимаются, уже добавленные еще можно получить
+   */
+  public void close() {
+    lock.lock();
+    try {
+      isClosed = true;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package otus.project.server;
+
+/**
+ * Поведение при заполнении исходящей очереди клиента
+ */
+public enum OverflowPolicy {
+  /**
+   * Отбросить самое старое сообщение в очереди
+   */
+  DROP_OLDEST,
+  /**
+   * Отбросить новое сообщение
+   */
+  DROP_NEW,
+  /**
+   * Отключить клиента, который не успевает получать сообщения
+   */
+  DISCONNECT,
+}
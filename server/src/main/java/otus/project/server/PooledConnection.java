@@ -0,0 +1,90 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Соединение из пула с кэшем подготовленных запросов.
+ * Используется одним потоком за раз, close() возвращает соединение в пул
+ */
+public class PooledConnection implements AutoCloseable {
+  private static final Logger logger = LogManager.getLogger(PooledConnection.class.getName());
+  private final ConnectionPool pool;
+  private final Connection connection;
+  private final Map<String, PreparedStatement> statements;
+
+  PooledConnection(ConnectionPool pool, Connection connection) {
+    this.pool = pool;
+    this.connection = connection;
+    this.statements = new HashMap<>();
+  }
+
+  /**
+   * Подготовленный запрос из кэша соединения. Параметры предыдущего вызова очищаются
+   *
+   * @param sql текст запроса
+   * @return подготовленный запрос
+   */
+  public PreparedStatement prepareStatement(String sql) throws SQLException {
+    PreparedStatement statement = statements.get(sql);
+    if (statement == null) {
+      statement = connection.prepareStatement(sql);
+      statements.put(sql, statement);
+    } else {
+      statement.clearParameters();
+    }
+    return statement;
+  }
+
+  /**
+   * Подготовленный запрос из кэша соединения, возвращающий сгенерированные ключи
+   *
+   * @param sql               текст запроса
+   * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS/Statement.NO_GENERATED_KEYS
+   * @return подготовленный запрос
+   */
+  public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    PreparedStatement statement = statements.get(sql);
+    if (statement == null) {
+      statement = connection.prepareStatement(sql, autoGeneratedKeys);
+      statements.put(sql, statement);
+    } else {
+      statement.clearParameters();
+    }
+    return statement;
+  }
+
+  public Connection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Соединение нельзя вернуть в пул: оно закрыто или осталось с незавершенной транзакцией
+   */
+  boolean isBroken() {
+    try {
+      return connection.isClosed() || !connection.getAutoCommit();
+    } catch (SQLException e) {
+      return true;
+    }
+  }
+
+  void closePhysically() {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      logger.error("Ошибка при закрытии соединения с БД", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.release(this);
+  }
+}
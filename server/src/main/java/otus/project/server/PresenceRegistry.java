@@ -0,0 +1,175 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otus.project.common.MessageType;
+
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * Версионированный список пользователей в чате этого узла: постраничный /activelist и подписка на изменения.
+ * Имена хранятся в отсортированном конкурентном множестве, поэтому страница - обход от курсора (последнего имени
+ * предыдущей страницы) без общей блокировки и без копирования всего списка. Каждое изменение получает следующий
+ * номер версии и рассылается подписчикам в порядке версий: по пропуску номера клиент понимает, что список
+ * нужно запросить заново. Страница читается без блокировки и может уже содержать изменения новее своей версии,
+ * поэтому клиент, собирающий список, подписывается до запроса первой страницы и применяет изменения
+ * как идемпотентные добавления и удаления.
+ * Изменения сверяются с индексом клиентов сервера под блокировкой изменений: если между изменением индекса
+ * и списка имя успел занять или освободить другой клиент, список остается равным индексу
+ */
+public class PresenceRegistry {
+  private static final Logger logger = LogManager.getLogger(PresenceRegistry.class.getName());
+  /**
+   * Ограничение длины страницы в символах: в modified UTF-8 символ занимает до 3 байт,
+   * а сообщение текстового протокола - не более 65535 байт
+   */
+  private static final int MAX_PAGE_CHARS = 20_000;
+  private final Predicate<String> isOnline;
+  private final NavigableSet<String> usernames;
+  private final Set<ClientHandler> subscribers;
+  private final Object lock;
+  private volatile long version;
+
+  /**
+   * @param isOnline есть ли пользователь с таким именем в индексе клиентов сервера
+   */
+  public PresenceRegistry(Predicate<String> isOnline) {
+    this.isOnline = isOnline;
+    this.usernames = new ConcurrentSkipListSet<>();
+    this.subscribers = ConcurrentHashMap.newKeySet();
+    this.lock = new Object();
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public int size() {
+    return usernames.size();
+  }
+
+  /**
+   * Страница списка пользователей в порядке имен
+   *
+   * @param cursor имя, после которого начинается страница, или null для первой страницы
+   * @param limit  максимальное количество имен
+   * @return страница
+   */
+  public Page page(String cursor, int limit) {
+    long pageVersion = version;
+    Iterator<String> iterator = (cursor == null ? usernames : usernames.tailSet(cursor, false)).iterator();
+    List<String> names = new ArrayList<>(Math.min(limit, 256));
+    int chars = 0;
+    while (iterator.hasNext() && names.size() < limit) {
+      String username = iterator.next();
+      chars += username.length() + 1;
+      if (chars > MAX_PAGE_CHARS && !names.isEmpty()) {
+        break;
+      }
+      names.add(username);
+    }
+    String nextCursor = !names.isEmpty() && usernames.higher(names.get(names.size() - 1)) != null
+            ? names.get(names.size() - 1)
+            : null;
+    return new Page(pageVersion, names, nextCursor);
+  }
+
+  public void joined(String username) {
+    synchronized (lock) {
+      if (isOnline.test(username) && usernames.add(username)) {
+        publish("+", username);
+      }
+    }
+  }
+
+  public void left(String username) {
+    synchronized (lock) {
+      if (!isOnline.test(username) && usernames.remove(username)) {
+        publish("-", username);
+      }
+    }
+  }
+
+  public void renamed(String oldUsername, String newUsername) {
+    synchronized (lock) {
+      boolean isRemoved = !isOnline.test(oldUsername) && usernames.remove(oldUsername);
+      boolean isAdded = isOnline.test(newUsername) && usernames.add(newUsername);
+      if (isRemoved && isAdded) {
+        publish("~", oldUsername, newUsername);
+      } else if (isRemoved) {
+        publish("-", oldUsername);
+      } else if (isAdded) {
+        publish("+", newUsername);
+      }
+    }
+  }
+
+  /**
+   * Подписка клиента на изменения списка. Клиент сразу получает текущую версию (операция "="),
+   * до любого изменения с большей версией
+   *
+   * @param clientHandler клиент-обработчик
+   */
+  public void subscribe(ClientHandler clientHandler) {
+    synchronized (lock) {
+      subscribers.add(clientHandler);
+      clientHandler.sendControl(MessageType.PRESENCE_DELTA, "/presence", Long.toString(version), "=");
+    }
+  }
+
+  /**
+   * Отмена подписки, в том числе при отключении клиента
+   *
+   * @param clientHandler клиент-обработчик
+   * @return true/false подписка отменена/клиент не был подписан
+   */
+  public boolean unsubscribe(ClientHandler clientHandler) {
+    return subscribers.remove(clientHandler);
+  }
+
+  /**
+   * Рассылка изменения подписчикам. Выполняется под блокировкой изменений, чтобы изменения попадали
+   * в исходящие очереди в порядке версий; постановка в очередь не блокируется, а кадр кодируется
+   * один раз для каждого протокола
+   */
+  private void publish(String operation, String... names) {
+    long next = version + 1;
+    version = next;
+    if (subscribers.isEmpty()) {
+      return;
+    }
+    String[] fields = new String[names.length + 2];
+    fields[0] = Long.toString(next);
+    fields[1] = operation;
+    System.arraycopy(names, 0, fields, 2, names.length);
+    MessageFrame textFrame;
+    try {
+      textFrame = MessageFrame.of("/presence " + String.join(" ", fields));
+    } catch (UTFDataFormatException e) {
+      logger.error("Не удалось разослать изменение списка пользователей", e);
+      return;
+    }
+    MessageFrame binaryFrame = MessageFrame.binary(MessageType.PRESENCE_DELTA, fields);
+    for (ClientHandler subscriber : subscribers) {
+      subscriber.sendControl(textFrame, binaryFrame);
+    }
+  }
+
+  /**
+   * Страница списка пользователей
+   *
+   * @param version    версия списка на момент начала чтения страницы
+   * @param usernames  имена пользователей
+   * @param nextCursor курсор следующей страницы или null, если страница последняя
+   */
+  public record Page(long version, List<String> usernames, String nextCursor) {
+  }
+}
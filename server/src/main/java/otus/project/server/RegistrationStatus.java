@@ -0,0 +1,12 @@
+package otus.project.server;
+
+/**
+ * Результат добавления нового пользователя в хранилище
+ */
+public enum RegistrationStatus {
+  SUCCESS,
+  LOGIN_EXISTS,
+  USERNAME_EXISTS,
+  ROLE_NOT_FOUND,
+  FAILED,
+}
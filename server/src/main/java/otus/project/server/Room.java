@@ -0,0 +1,68 @@
+package otus.project.server;
+
+import otus.project.server.jfr.FanOutEvent;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Комната чата: собственное множество участников и поток рассылки.
+ * Все сообщения комнаты рассылаются одним потоком, поэтому участники получают их в порядке отправки
+ */
+public class Room {
+  private final String name;
+  private final Set<ClientHandler> members;
+  private final Executor executor;
+
+  public Room(String name, Executor executor) {
+    this.name = name;
+    this.members = ConcurrentHashMap.newKeySet();
+    this.executor = executor;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int size() {
+    return members.size();
+  }
+
+  boolean add(ClientHandler clientHandler) {
+    return members.add(clientHandler);
+  }
+
+  boolean remove(ClientHandler clientHandler) {
+    return members.remove(clientHandler);
+  }
+
+  boolean isEmpty() {
+    return members.isEmpty();
+  }
+
+  /**
+   * Рассылка сообщения участникам комнаты в потоке комнаты
+   *
+   * @param frame    закодированное сообщение
+   * @param excluded участник, которому сообщение не отправляется, или null
+   */
+  void publish(MessageFrame frame, ClientHandler excluded) {
+    executor.execute(() -> {
+      FanOutEvent event = new FanOutEvent();
+      event.begin();
+      int recipients = 0;
+      for (ClientHandler c : members) {
+        if (c != excluded) {
+          c.sendFrame(frame);
+          recipients++;
+        }
+      }
+      if (event.shouldCommit()) {
+        event.scope = name;
+        event.recipients = recipients;
+        event.commit();
+      }
+    });
+  }
+}
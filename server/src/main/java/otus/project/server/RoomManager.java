@@ -0,0 +1,117 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.UTFDataFormatException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Комнаты чата. Комната создается при входе первого участника и удаляется после выхода последнего.
+ * Рассылка сообщений комнат распределена по однопоточным исполнителям по хешу имени комнаты,
+ * так что загруженная комната занимает один поток и не задерживает рассылку в остальных
+ */
+public class RoomManager {
+  private static final Logger logger = LogManager.getLogger(RoomManager.class.getName());
+  private static final int SHARD_QUEUE_CAPACITY = 10000;
+  private final Server server;
+  private final Map<String, Room> rooms;
+  private final ThreadPoolExecutor[] shards;
+
+  public RoomManager(Server server, int threads) {
+    this.server = server;
+    this.rooms = new ConcurrentHashMap<>();
+    this.shards = new ThreadPoolExecutor[threads];
+    for (int i = 0; i < threads; i++) {
+      String threadName = "room-" + i;
+      shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(SHARD_QUEUE_CAPACITY),
+              runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+              },
+              new ThreadPoolExecutor.AbortPolicy());
+    }
+  }
+
+  /**
+   * Вход клиента в комнату с выходом из текущей
+   *
+   * @param clientHandler клиент-обработчик
+   * @param name          имя комнаты
+   */
+  public void join(ClientHandler clientHandler, String name) {
+    Room current = clientHandler.getRoom();
+    if (current != null && current.getName().equals(name)) {
+      return;
+    }
+    leave(clientHandler);
+    Room room = rooms.compute(name, (key, r) -> {
+      if (r == null) {
+        r = new Room(key, shards[Math.floorMod(key.hashCode(), shards.length)]);
+      }
+      r.add(clientHandler);
+      return r;
+    });
+    clientHandler.setRoom(room);
+    publish(room, "В комнату зашел: " + clientHandler.getUsername(), clientHandler);
+  }
+
+  /**
+   * Выход клиента из текущей комнаты
+   *
+   * @param clientHandler клиент-обработчик
+   * @return true/false клиент вышел из комнаты/не был в комнате
+   */
+  public boolean leave(ClientHandler clientHandler) {
+    Room room = clientHandler.getRoom();
+    if (room == null) {
+      return false;
+    }
+    clientHandler.setRoom(null);
+    rooms.computeIfPresent(room.getName(), (key, r) -> {
+      r.remove(clientHandler);
+      return r.isEmpty() ? null : r;
+    });
+    publish(room, "Из комнаты вышел: " + clientHandler.getUsername(), null);
+    return true;
+  }
+
+  /**
+   * Рассылка сообщения участникам комнаты
+   *
+   * @param room     комната
+   * @param message  сообщение
+   * @param excluded участник, которому сообщение не отправляется, или null
+   */
+  public void publish(Room room, String message, ClientHandler excluded) {
+    MessageFrame frame;
+    try {
+      frame = MessageFrame.of(server.getCurrentTime() + "[" + room.getName() + "] " + message);
+    } catch (UTFDataFormatException e) {
+      logger.error("Не удалось разослать сообщение в комнату {}", room.getName(), e);
+      return;
+    }
+    try {
+      room.publish(frame, excluded);
+    } catch (RejectedExecutionException e) {
+      logger.warn("Очередь рассылки комнаты {} заполнена, сообщение отброшено", room.getName());
+    }
+  }
+
+  public int getRoomCount() {
+    return rooms.size();
+  }
+
+  public void shutdown() {
+    for (ThreadPoolExecutor shard : shards) {
+      shard.shutdown();
+    }
+  }
+}
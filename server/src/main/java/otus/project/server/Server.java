@@ -2,143 +2,505 @@ package otus.project.server;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import otus.project.server.cluster.ClusterDelivery;
+import otus.project.server.cluster.ClusterNode;
+import otus.project.server.history.MessageHistory;
+import otus.project.server.jfr.FanOutEvent;
+import otus.project.server.jfr.PipelineTracing;
 
-import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.text.SimpleDateFormat;
+import java.io.UTFDataFormatException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Server {
   private static final Logger logger = LogManager.getLogger(Server.class.getName());
-  private ServerSocket serverSocket;
-  private final int port;
-  private final List<ClientHandler> clients;
+  private final ServerConfig config;
+  private final ServerEngine engine;
+  private final Map<String, ClientHandler> clients;
   private final AuthenticationProvider authenticationProvider;
-  private final Timer timer;
-  private final TimerTask timerTask;
+  private final AsyncAuthenticationProvider asyncAuthenticationProvider;
+  private final MessageHistory messageHistory;
+  private final ChatEventWriter chatEventWriter;
+  private final RoomManager roomManager;
+  private final IdleTimeoutWheel idleTimeoutWheel;
+  private final ClusterNode cluster;
+  private final CommandRegistry commandRegistry;
+  private final MessageClock messageClock;
+  private final ServerMetrics metrics;
+  private final SessionManager sessionManager;
+  private final PresenceRegistry presence;
 
   public Server(int port) {
-    this.port = port;
-    this.clients = new ArrayList<>();
+    this(ServerConfig.withPort(port));
+  }
+
+  public Server(ServerConfig config) {
+    this.config = config;
+    this.engine = config.createEngine();
+    this.clients = new ConcurrentHashMap<>();
+    this.presence = new PresenceRegistry(clients::containsKey);
+    this.messageClock = new MessageClock();
+    this.metrics = new ServerMetrics(this);
+    this.sessionManager = new SessionManager(config.getSessionSecret(), config.getSessionTtlMillis());
+    PipelineTracing.setSampleInterval(config.getJfrSampleInterval());
     this.authenticationProvider = new DBProvider(this);
-    this.timer = new Timer();
-    this.timerTask = new TimerTask() {
-      @Override
-      public void run() {
-        checkActiveClient();
-      }
-    };
-    timer.schedule(timerTask, 60000L, 60000L);// Проверка каждую минуту
+    this.asyncAuthenticationProvider = new AsyncAuthenticationProvider(authenticationProvider,
+            config.getAuthThreads(), config.getAuthQueueCapacity(), metrics);
+    this.messageHistory = config.isHistoryEnabled()
+            ? new MessageHistory(Path.of(config.getHistoryDirectory()), config.getHistorySegmentSize(),
+            config.getHistoryRetentionMillis(), config.getHistoryMaxSize(), config.getHistoryQueueCapacity())
+            : null;
+    this.chatEventWriter = config.isEventsEnabled()
+            ? new ChatEventWriter(config.getDatabaseUrl(), config.getDatabaseTimeoutMillis(),
+            config.getEventsBatchSize(), config.getEventsFlushMillis(), config.getEventsQueueCapacity())
+            : null;
+    this.roomManager = new RoomManager(this, config.getRoomThreads());
+    this.idleTimeoutWheel = new IdleTimeoutWheel(config.getIdleTimeoutMillis(), config.getIdleTickMillis(),
+            this::disableInactiveClient);
+    this.commandRegistry = ChatCommands.createRegistry();
+    this.cluster = config.isClusterEnabled()
+            ? new ClusterNode(config.getClusterHost(), config.getClusterBindAddress(), config.getClusterPort(),
+            config.getClusterPeers(), config.getClusterSecret(), config.getClusterTimeoutMillis(), new RemoteDelivery())
+            : null;
+  }
+
+  public ServerConfig getConfig() {
+    return config;
   }
 
   public AuthenticationProvider getAuthenticationProvider() {
     return authenticationProvider;
   }
 
+  public AsyncAuthenticationProvider getAsyncAuthenticationProvider() {
+    return asyncAuthenticationProvider;
+  }
+
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public SessionManager getSessionManager() {
+    return sessionManager;
+  }
+
+  public PresenceRegistry getPresence() {
+    return presence;
+  }
+
+  public MessageClock getMessageClock() {
+    return messageClock;
+  }
+
+  public CommandRegistry getCommandRegistry() {
+    return commandRegistry;
+  }
+
+  public RoomManager getRoomManager() {
+    return roomManager;
+  }
+
+  public ChatEventWriter getChatEventWriter() {
+    return chatEventWriter;
+  }
+
+  public MessageHistory getMessageHistory() {
+    return messageHistory;
+  }
+
+  /**
+   * Количество клиентов, прошедших аутентификацию на этом узле
+   */
+  public int getClientCount() {
+    return clients.size();
+  }
+
+  /**
+   * Постановка события чата в очередь записи в БД
+   *
+   * @param event событие
+   */
+  public void recordEvent(ChatEvent event) {
+    if (chatEventWriter != null) {
+      chatEventWriter.add(event);
+    }
+  }
+
   public void start() {
     try {
-      serverSocket = new ServerSocket(port);
-      logger.info("Сервер запущен на порту: " + port);
       authenticationProvider.initialize();
-      while (true) {
-        Socket socket = serverSocket.accept();
-        new ClientHandler(this, socket);
+      if (messageHistory != null) {
+        messageHistory.start();
+      }
+      if (chatEventWriter != null) {
+        chatEventWriter.start();
       }
+      idleTimeoutWheel.start();
+      sessionManager.start();
+      if (config.isMetricsJmxEnabled()) {
+        metrics.registerMBeans();
+      }
+      if (cluster != null) {
+        cluster.start();
+      }
+      engine.start(this);
     } catch (Exception e) {
       logger.info("Сервер завершает работу", e);
       System.exit(0);
     }
   }
 
-  public synchronized void subscribe(ClientHandler clientHandler) {
-    broadcastMessage("В чат зашел: " + clientHandler.getUsername());
-    clients.add(clientHandler);
+  /*
+   * Клиенты хранятся в конкурентном индексе имя пользователя -> клиент: рассылка и подписка
+   * не берут общую блокировку, а личные сообщения, бан и проверка имени выполняются за O(1)
+   */
+
+  /**
+   * Подписка клиента на сообщения чата
+   *
+   * @param clientHandler клиент-обработчик с заданным именем пользователя
+   * @return true/false успех/имя пользователя уже занято; при включенном кластере результат
+   * приходит после ответа узла-владельца имени, без блокировки вызывающего потока
+   */
+  public CompletableFuture<Boolean> subscribe(ClientHandler clientHandler) {
+    String username = clientHandler.getUsername();
+    if (clients.putIfAbsent(username, clientHandler) != null) {
+      return CompletableFuture.completedFuture(false);
+    }
+    if (cluster == null) {
+      onSubscribed(clientHandler, username);
+      return CompletableFuture.completedFuture(true);
+    }
+    return cluster.claim(username).thenApply(isClaimed -> {
+      if (!isClaimed) {
+        clients.remove(username, clientHandler);
+        return false;
+      }
+      onSubscribed(clientHandler, username);
+      return true;
+    });
   }
 
-  public synchronized void unsubscribe(ClientHandler clientHandler) {
-    clients.remove(clientHandler);
-    if (clientHandler.getUsername() == null) {
+  private void onSubscribed(ClientHandler clientHandler, String username) {
+    idleTimeoutWheel.schedule(clientHandler);
+    presence.joined(username);
+    broadcastMessage("В чат зашел: " + username, clientHandler);
+  }
+
+  /**
+   * Подписка клиента, восстановившего сессию. Если прежнее подключение этой же сессии еще числится
+   * в чате (сервер не успел заметить обрыв связи), оно молча заменяется новым и отключается
+   *
+   * @param clientHandler клиент-обработчик с именем пользователя из сессии
+   * @param sessionId     идентификатор восстановленной сессии
+   * @return true/false успех/имя пользователя занято другим подключением
+   */
+  public CompletableFuture<Boolean> resumeSession(ClientHandler clientHandler, String sessionId) {
+    ClientHandler previous = findClientByUsername(clientHandler.getUsername());
+    if (previous != null && sessionId.equals(previous.getSessionId())
+            && clients.replace(clientHandler.getUsername(), previous, clientHandler)) {
+      idleTimeoutWheel.schedule(clientHandler);
+      previous.abort();
+      return CompletableFuture.completedFuture(true);
+    }
+    return subscribe(clientHandler);
+  }
+
+  public void unsubscribe(ClientHandler clientHandler) {
+    roomManager.leave(clientHandler);
+    presence.unsubscribe(clientHandler);
+    String username = clientHandler.getUsername();
+    if (username == null || !clients.remove(username, clientHandler)) {
       return;
     }
-    broadcastMessage("Из чата вышел: " + clientHandler.getUsername());
+    presence.left(username);
+    if (cluster != null) {
+      cluster.release(username);
+    }
+    broadcastMessage("Из чата вышел: " + username);
+  }
+
+  /**
+   * Смена имени пользователя в индексе клиентов
+   *
+   * @param clientHandler клиент-обработчик
+   * @param newUsername   новое имя пользователя
+   * @return true/false успех/имя пользователя уже занято; при включенном кластере результат
+   * приходит после ответа узла-владельца имени, без блокировки вызывающего потока
+   */
+  public CompletableFuture<Boolean> changeUsername(ClientHandler clientHandler, String newUsername) {
+    if (clients.putIfAbsent(newUsername, clientHandler) != null) {
+      return CompletableFuture.completedFuture(false);
+    }
+    if (cluster == null) {
+      onUsernameChanged(clientHandler, newUsername);
+      return CompletableFuture.completedFuture(true);
+    }
+    return cluster.claim(newUsername).thenApply(isClaimed -> {
+      if (!isClaimed) {
+        clients.remove(newUsername, clientHandler);
+        return false;
+      }
+      onUsernameChanged(clientHandler, newUsername);
+      return true;
+    });
+  }
+
+  private void onUsernameChanged(ClientHandler clientHandler, String newUsername) {
+    String oldUsername = clientHandler.getUsername();
+    clients.remove(oldUsername, clientHandler);
+    clientHandler.setUsername(newUsername);
+    presence.renamed(oldUsername, newUsername);
+    if (cluster != null) {
+      cluster.release(oldUsername);
+    }
+  }
+
+  private ClientHandler findClientByUsername(String username) {
+    return clients.get(username);
+  }
+
+  public void broadcastMessage(String message) {
+    broadcastMessage(message, null);
+  }
+
+  /**
+   * Рассылка сообщения пользователя всем клиентам с сохранением в БД
+   *
+   * @param ch      клиент-отправитель
+   * @param message текст сообщения
+   */
+  public void sendChatMessage(ClientHandler ch, String message) {
+    broadcastMessage(ch.getUsername() + ": " + message);
+    recordEvent(ChatEvent.message(ch.getUsername(), message));
+  }
+
+  /**
+   * Рассылка сообщения пользователя участникам его комнаты с сохранением в БД
+   *
+   * @param ch      клиент-отправитель
+   * @param room    комната отправителя
+   * @param message текст сообщения
+   */
+  public void sendRoomMessage(ClientHandler ch, Room room, String message) {
+    roomManager.publish(room, ch.getUsername() + ": " + message, null);
+    recordEvent(ChatEvent.roomMessage(ch.getUsername(), room.getName(), message));
   }
 
-  public synchronized void broadcastMessage(String message) {
+  private void broadcastMessage(String message, ClientHandler excluded) {
     message = getCurrentTime() + message;
-    for (ClientHandler c : clients) {
-      c.sendMessage(message);
+    MessageFrame frame;
+    try {
+      frame = MessageFrame.of(message);
+    } catch (UTFDataFormatException e) {
+      logger.error("Не удалось разослать сообщение", e);
+      return;
+    }
+    if (messageHistory != null) {
+      messageHistory.appendPublic(message);
+    }
+    FanOutEvent event = new FanOutEvent();
+    event.begin();
+    long start = System.nanoTime();
+    int recipients = 0;
+    for (ClientHandler c : clients.values()) {
+      if (c != excluded) {
+        c.sendFrame(frame);
+        recipients++;
+      }
+    }
+    metrics.getBroadcastFanOut().recordSince(start);
+    if (event.shouldCommit()) {
+      event.scope = "chat";
+      event.recipients = recipients;
+      event.commit();
+    }
+    if (cluster != null) {
+      cluster.broadcast(message);
     }
   }
 
   String getCurrentTime() {
-    return "(" + new SimpleDateFormat("HH:mm:ss").format(new Date(System.currentTimeMillis())) + ") ";
+    return messageClock.getTimePrefix();
   }
 
-  public synchronized void sendPrivateMessage(ClientHandler ch, String message) {
-    String[] str = message.split(" ", 3);
-    if (str.length < 3) {
+  /**
+   * Отправка личного сообщения
+   *
+   * @param ch        клиент-отправитель
+   * @param recipient имя получателя
+   * @param text      текст сообщения
+   */
+  public void sendPrivateMessage(ClientHandler ch, String recipient, String text) {
+    String sender = ch.getUsername();
+    String mess = getCurrentTime() + sender + " -> " + recipient + ": " + text;
+    ClientHandler c = findClientByUsername(recipient);
+    if (c != null) {
+      c.sendMessage(mess);
+      onPrivateMessageSent(ch, sender, recipient, c.getAccountName(), text, mess);
       return;
     }
+    if (cluster != null) {
+      cluster.locate(recipient).thenAccept(node -> {
+        if (node != null && !cluster.isLocalNode(node)
+                && cluster.sendPrivateMessage(node, sender, ch.getAccountName(), recipient, mess)) {
+          // учетная запись получателя известна только его узлу, здесь запись истории видна лишь отправителю
+          onPrivateMessageSent(ch, sender, recipient, "", text, mess);
+        }
+      });
+    }
+  }
 
-    String mess = getCurrentTime() + ch.getUsername() + " -> " + str[1] + ": " + str[2];
-    for (ClientHandler c : clients) {
-      if (c.getUsername().equals(str[1])) {
-        c.sendMessage(mess);
-        ch.sendMessage(mess);
-        break;
-      }
+  private void onPrivateMessageSent(ClientHandler ch, String sender, String recipient, String recipientAccount,
+                                    String text, String mess) {
+    ch.sendMessage(mess);
+    if (messageHistory != null) {
+      messageHistory.appendPrivate(ch.getAccountName(), recipientAccount, mess);
+    }
+    if (config.isPrivateEventsEnabled()) {
+      recordEvent(ChatEvent.privateMessage(sender, recipient, text));
     }
   }
 
-  public synchronized boolean isUsernameBusy(String username) {
-    for (ClientHandler c : clients) {
-      if (c.getUsername().equals(username)) {
-        return true;
-      }
+  /**
+   * Отправка клиенту последних сообщений из истории
+   *
+   * @param clientHandler клиент-обработчик
+   * @param count         количество сообщений
+   */
+  public void sendHistory(ClientHandler clientHandler, int count) {
+    if (messageHistory == null) {
+      clientHandler.sendMessage("История сообщений отключена");
+      return;
+    }
+    if (messageHistory.readLast(clientHandler.getAccountName(), count, clientHandler::sendMessage) == 0) {
+      clientHandler.sendMessage("История сообщений пуста");
     }
-    return false;
   }
 
-  public synchronized void handleBan(ClientHandler ch, String name) {
-    for (ClientHandler c : clients) {
-      if (c.getUsername().equals(name)) {
-        c.sendMessage("/banok");
-        ch.sendMessage(getCurrentTime() + "Пользователь " + name + " заблокирован");
-        c.setInChat(false);
-        return;
-      }
+  public boolean isUsernameBusy(String username) {
+    return findClientByUsername(username) != null || cluster != null && cluster.isUsernameBusy(username);
+  }
+
+  public void handleBan(ClientHandler ch, String name) {
+    ClientHandler c = findClientByUsername(name);
+    if (c != null) {
+      c.sendBanOk();
+      ch.sendMessage(getCurrentTime() + "Пользователь " + name + " заблокирован");
+      c.setInChat(false);
+      sessionManager.invalidateUser(name);
+      recordEvent(ChatEvent.ban(ch.getUsername(), name));
+      return;
+    }
+    if (cluster != null) {
+      cluster.locate(name).thenAccept(node -> {
+        if (node != null && !cluster.isLocalNode(node) && cluster.ban(node, ch.getUsername(), name)) {
+          ch.sendMessage(getCurrentTime() + "Пользователь " + name + " заблокирован");
+          recordEvent(ChatEvent.ban(ch.getUsername(), name));
+        } else {
+          ch.sendMessage(getCurrentTime() + "Пользователя " + name + " нет в чате");
+        }
+      });
+      return;
     }
     ch.sendMessage(getCurrentTime() + "Пользователя " + name + " нет в чате");
   }
 
-  public synchronized void sendActiveList(ClientHandler clientHandler) {
-    StringBuilder stringBuilder = new StringBuilder("В чате:\n");
-    for (ClientHandler ch : clients) {
-      stringBuilder.append(ch.getUsername()).append("\n");
+  /**
+   * Отправка страницы списка пользователей этого узла. Список больше не собирается целиком,
+   * поэтому ответ не упирается в ограничение длины сообщения при большом количестве пользователей
+   *
+   * @param clientHandler клиент-обработчик
+   * @param cursor        последнее имя предыдущей страницы или null для первой страницы
+   */
+  public void sendActiveList(ClientHandler clientHandler, String cursor) {
+    PresenceRegistry.Page page = presence.page(cursor, config.getActiveListPageSize());
+    StringBuilder stringBuilder = new StringBuilder("В чате (версия ").append(page.version())
+            .append(", всего ").append(presence.size()).append("):");
+    for (String username : page.usernames()) {
+      stringBuilder.append('\n').append(username);
     }
-    clientHandler.sendMessage(stringBuilder.deleteCharAt(stringBuilder.length() - 1).toString());
+    if (page.nextCursor() != null) {
+      stringBuilder.append("\nСледующая страница: /activelist ").append(page.nextCursor());
+    }
+    clientHandler.sendMessage(stringBuilder.toString());
   }
 
-  private synchronized void checkActiveClient() {
-    long currentTime = System.currentTimeMillis();
-    for (ClientHandler ch : clients) {
-      if ((currentTime - ch.getLastActive()) > 1_200_000L) {// 20 минут 1_200_000
-        ch.sendMessage("Вы были не активны более 20 минут и покинули чат.");
-        ch.disableClient();
-      }
-    }
+  private void disableInactiveClient(ClientHandler ch) {
+    ch.sendMessage("Вы были не активны более " + config.getIdleTimeoutMillis() / 60_000L + " минут и покинули чат.");
+    ch.disableClient();
   }
 
-  public synchronized void shutdown() {
-    for (ClientHandler ch : clients) {
+  public void shutdown() {
+    for (ClientHandler ch : clients.values()) {
       ch.disableClient();
     }
-    try {
-      serverSocket.close();
-    } catch (IOException e) {
-      logger.error("Не удалось закрыть serverSocket ", e);
+    idleTimeoutWheel.close();
+    roomManager.shutdown();
+    if (cluster != null) {
+      cluster.close();
+    }
+    asyncAuthenticationProvider.shutdown();
+    sessionManager.close();
+    if (messageHistory != null) {
+      messageHistory.close();
+    }
+    if (chatEventWriter != null) {
+      chatEventWriter.close();
     }
+    authenticationProvider.close();
+    metrics.unregisterMBeans();
+    engine.stop();
   }
 
+  /**
+   * Доставка сообщений, пересланных другими узлами кластера, клиентам этого узла
+   */
+  private class RemoteDelivery implements ClusterDelivery {
+    @Override
+    public void deliverBroadcast(String message) {
+      MessageFrame frame;
+      try {
+        frame = MessageFrame.of(message);
+      } catch (UTFDataFormatException e) {
+        logger.error("Не удалось разослать сообщение другого узла", e);
+        return;
+      }
+      if (messageHistory != null) {
+        messageHistory.appendPublic(message);
+      }
+      for (ClientHandler c : clients.values()) {
+        c.sendFrame(frame);
+      }
+    }
+
+    @Override
+    public void deliverPrivateMessage(String sender, String senderAccount, String recipient, String message) {
+      ClientHandler c = findClientByUsername(recipient);
+      if (c != null) {
+        c.sendMessage(message);
+        if (messageHistory != null) {
+          messageHistory.appendPrivate(senderAccount, c.getAccountName(), message);
+        }
+      }
+    }
+
+    @Override
+    public void deliverBan(String actor, String target) {
+      ClientHandler c = findClientByUsername(target);
+      if (c != null) {
+        c.sendBanOk();
+        c.setInChat(false);
+        sessionManager.invalidateUser(target);
+        logger.info("Пользователь {} заблокирован администратором {} с другого узла", target, actor);
+      }
+    }
+
+    @Override
+    public Collection<String> localUsernames() {
+      return new ArrayList<>(clients.keySet());
+    }
+  }
 }
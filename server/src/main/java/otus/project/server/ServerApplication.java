@@ -2,6 +2,6 @@ package otus.project.server;
 
 public class ServerApplication {
   public static void main(String[] args) {
-    new Server(8189).start();
+    new Server(ServerConfig.fromSystemProperties()).start();
   }
 }
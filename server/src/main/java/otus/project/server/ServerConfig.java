@@ -0,0 +1,299 @@
+package otus.project.server;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Параметры запуска сервера. Значения берутся из системных свойств (-Dchat.*)
+ * <ul>
+ *   <li>chat.port - порт сервера (8189)</li>
+ *   <li>chat.engine - сетевой движок: blocking/virtual/nio (blocking)</li>
+ *   <li>chat.nio.threads - количество потоков event loop для nio (число ядер)</li>
+ *   <li>chat.outbound.capacity - размер исходящей очереди клиента (1000)</li>
+ *   <li>chat.outbound.overflow - политика переполнения очереди: drop_oldest/drop_new/disconnect (drop_new)</li>
+ *   <li>chat.db.url - адрес БД (jdbc:sqlite:databases/users.db)</li>
+ *   <li>chat.db.pool.size - размер пула соединений с БД (4)</li>
+ *   <li>chat.db.timeout - ожидание свободного соединения и блокировки SQLite, мс (5000)</li>
+ *   <li>chat.db.cache.size - количество пользователей в кэше ролей и id, 0 - без кэша (10000)</li>
+ *   <li>chat.auth.threads - количество потоков аутентификации (chat.db.pool.size)</li>
+ *   <li>chat.auth.queue - максимальное количество ожидающих запросов аутентификации (1000)</li>
+ *   <li>chat.history.enabled - сохранять историю сообщений (true)</li>
+ *   <li>chat.history.dir - каталог истории (history)</li>
+ *   <li>chat.history.segment.size - размер сегмента истории, байт (16 МБ)</li>
+ *   <li>chat.history.retention.hours - время хранения сегмента после последней записи, часов (168)</li>
+ *   <li>chat.history.max.size - максимальный размер истории на диске, байт (1 ГБ)</li>
+ *   <li>chat.history.queue - максимальное количество сообщений, ожидающих записи в историю (10000)</li>
+ *   <li>chat.history.max.request - максимальное N в команде /history N (100)</li>
+ *   <li>chat.room.threads - количество потоков рассылки сообщений комнат (число ядер)</li>
+ *   <li>chat.idle.timeout.ms - время неактивности клиента до отключения, мс (1200000)</li>
+ *   <li>chat.idle.tick.ms - шаг колеса таймеров неактивности, мс (1000)</li>
+ *   <li>chat.cluster.port - порт для соединений узлов кластера, 0 - без кластера (0)</li>
+ *   <li>chat.cluster.host - имя хоста этого узла для остальных узлов (localhost)</li>
+ *   <li>chat.cluster.bind - адрес, на котором принимаются соединения узлов кластера (chat.cluster.host)</li>
+ *   <li>chat.cluster.secret - общий секрет узлов кластера, обязателен при включенном кластере ()</li>
+ *   <li>chat.cluster.peers - остальные узлы кластера через запятую в виде host:port ()</li>
+ *   <li>chat.cluster.timeout - ожидание ответа другого узла, мс (2000)</li>
+ *   <li>chat.events.enabled - сохранять сообщения, баны и смену ролей в БД (false)</li>
+ *   <li>chat.events.private - сохранять в БД и личные сообщения, текст хранится в открытом виде (false)</li>
+ *   <li>chat.events.batch.size - максимальное количество событий в одной транзакции (500)</li>
+ *   <li>chat.events.flush.ms - максимальная задержка записи события в БД, мс (100)</li>
+ *   <li>chat.events.queue - максимальное количество событий, ожидающих записи в БД (50000)</li>
+ *   <li>chat.metrics.jmx - публиковать метрики сервера в JMX (true)</li>
+ *   <li>chat.jfr.sample - выборка событий JFR на каждое сообщение: 1 - все, N - одно из N, 0 - ни одного (1)</li>
+ *   <li>chat.session.ttl.ms - срок действия токена восстановления сессии, мс (1800000)</li>
+ *   <li>chat.session.secret - ключ подписи токенов сессий, пустой - случайный при каждом запуске ()</li>
+ *   <li>chat.activelist.page.size - количество имен на странице /activelist (100)</li>
+ * </ul>
+ */
+public class ServerConfig {
+  private int port;
+  private final EngineType engineType;
+  private final int eventLoopThreads;
+  private final int outboundQueueCapacity;
+  private final OverflowPolicy overflowPolicy;
+  private final String databaseUrl;
+  private final int databasePoolSize;
+  private final long databaseTimeoutMillis;
+  private final int userCacheSize;
+  private final int authThreads;
+  private final int authQueueCapacity;
+  private final boolean isHistoryEnabled;
+  private final String historyDirectory;
+  private final int historySegmentSize;
+  private final long historyRetentionMillis;
+  private final long historyMaxSize;
+  private final int historyQueueCapacity;
+  private final int historyMaxRequest;
+  private final int roomThreads;
+  private final long idleTimeoutMillis;
+  private final long idleTickMillis;
+  private final int clusterPort;
+  private final String clusterHost;
+  private final String clusterBindAddress;
+  private final String clusterSecret;
+  private final List<String> clusterPeers;
+  private final long clusterTimeoutMillis;
+  private final boolean isEventsEnabled;
+  private final boolean isPrivateEventsEnabled;
+  private final int eventsBatchSize;
+  private final long eventsFlushMillis;
+  private final int eventsQueueCapacity;
+  private final boolean isMetricsJmxEnabled;
+  private final int jfrSampleInterval;
+  private final long sessionTtlMillis;
+  private final String sessionSecret;
+  private final int activeListPageSize;
+
+  private ServerConfig() {
+    this.port = Integer.getInteger("chat.port", 8189);
+    this.engineType = EngineType.valueOf(System.getProperty("chat.engine", "blocking").toUpperCase());
+    this.eventLoopThreads = Integer.getInteger("chat.nio.threads", Runtime.getRuntime().availableProcessors());
+    this.outboundQueueCapacity = Integer.getInteger("chat.outbound.capacity", 1000);
+    this.overflowPolicy = OverflowPolicy.valueOf(System.getProperty("chat.outbound.overflow", "drop_new").toUpperCase());
+    this.databaseUrl = System.getProperty("chat.db.url", "jdbc:sqlite:databases/users.db");
+    this.databasePoolSize = Integer.getInteger("chat.db.pool.size", 4);
+    this.databaseTimeoutMillis = Long.getLong("chat.db.timeout", 5000L);
+    this.userCacheSize = Integer.getInteger("chat.db.cache.size", 10000);
+    this.authThreads = Integer.getInteger("chat.auth.threads", databasePoolSize);
+    this.authQueueCapacity = Integer.getInteger("chat.auth.queue", 1000);
+    this.isHistoryEnabled = Boolean.parseBoolean(System.getProperty("chat.history.enabled", "true"));
+    this.historyDirectory = System.getProperty("chat.history.dir", "history");
+    this.historySegmentSize = Integer.getInteger("chat.history.segment.size", 16 * 1024 * 1024);
+    this.historyRetentionMillis = Long.getLong("chat.history.retention.hours", 168L) * 3_600_000L;
+    this.historyMaxSize = Long.getLong("chat.history.max.size", 1024L * 1024 * 1024);
+    this.historyQueueCapacity = Integer.getInteger("chat.history.queue", 10000);
+    this.historyMaxRequest = Integer.getInteger("chat.history.max.request", 100);
+    this.roomThreads = Integer.getInteger("chat.room.threads", Runtime.getRuntime().availableProcessors());
+    this.idleTimeoutMillis = Long.getLong("chat.idle.timeout.ms", 1_200_000L);
+    this.idleTickMillis = Long.getLong("chat.idle.tick.ms", 1000L);
+    this.clusterPort = Integer.getInteger("chat.cluster.port", 0);
+    this.clusterHost = System.getProperty("chat.cluster.host", "localhost");
+    this.clusterBindAddress = System.getProperty("chat.cluster.bind", clusterHost);
+    this.clusterSecret = System.getProperty("chat.cluster.secret", "");
+    this.clusterPeers = Arrays.stream(System.getProperty("chat.cluster.peers", "").split(","))
+            .map(String::trim)
+            .filter(peer -> !peer.isEmpty())
+            .toList();
+    this.clusterTimeoutMillis = Long.getLong("chat.cluster.timeout", 2000L);
+    this.isEventsEnabled = Boolean.parseBoolean(System.getProperty("chat.events.enabled", "false"));
+    this.isPrivateEventsEnabled = Boolean.parseBoolean(System.getProperty("chat.events.private", "false"));
+    this.eventsBatchSize = Integer.getInteger("chat.events.batch.size", 500);
+    this.eventsFlushMillis = Long.getLong("chat.events.flush.ms", 100L);
+    this.eventsQueueCapacity = Integer.getInteger("chat.events.queue", 50000);
+    this.isMetricsJmxEnabled = Boolean.parseBoolean(System.getProperty("chat.metrics.jmx", "true"));
+    this.jfrSampleInterval = Integer.getInteger("chat.jfr.sample", 1);
+    this.sessionTtlMillis = Long.getLong("chat.session.ttl.ms", 1_800_000L);
+    this.sessionSecret = System.getProperty("chat.session.secret", "");
+    this.activeListPageSize = Integer.getInteger("chat.activelist.page.size", 100);
+  }
+
+  public static ServerConfig fromSystemProperties() {
+    return new ServerConfig();
+  }
+
+  public static ServerConfig withPort(int port) {
+    ServerConfig config = new ServerConfig();
+    config.port = port;
+    return config;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public EngineType getEngineType() {
+    return engineType;
+  }
+
+  public int getEventLoopThreads() {
+    return eventLoopThreads;
+  }
+
+  public int getOutboundQueueCapacity() {
+    return outboundQueueCapacity;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public String getDatabaseUrl() {
+    return databaseUrl;
+  }
+
+  public int getDatabasePoolSize() {
+    return databasePoolSize;
+  }
+
+  public long getDatabaseTimeoutMillis() {
+    return databaseTimeoutMillis;
+  }
+
+  public int getUserCacheSize() {
+    return userCacheSize;
+  }
+
+  public int getAuthThreads() {
+    return authThreads;
+  }
+
+  public int getAuthQueueCapacity() {
+    return authQueueCapacity;
+  }
+
+  public boolean isHistoryEnabled() {
+    return isHistoryEnabled;
+  }
+
+  public String getHistoryDirectory() {
+    return historyDirectory;
+  }
+
+  public int getHistorySegmentSize() {
+    return historySegmentSize;
+  }
+
+  public long getHistoryRetentionMillis() {
+    return historyRetentionMillis;
+  }
+
+  public long getHistoryMaxSize() {
+    return historyMaxSize;
+  }
+
+  public int getHistoryQueueCapacity() {
+    return historyQueueCapacity;
+  }
+
+  public int getHistoryMaxRequest() {
+    return historyMaxRequest;
+  }
+
+  public int getRoomThreads() {
+    return roomThreads;
+  }
+
+  public long getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  public long getIdleTickMillis() {
+    return idleTickMillis;
+  }
+
+  public boolean isClusterEnabled() {
+    return clusterPort > 0;
+  }
+
+  public int getClusterPort() {
+    return clusterPort;
+  }
+
+  public String getClusterHost() {
+    return clusterHost;
+  }
+
+  public String getClusterBindAddress() {
+    return clusterBindAddress;
+  }
+
+  public String getClusterSecret() {
+    return clusterSecret;
+  }
+
+  public List<String> getClusterPeers() {
+    return clusterPeers;
+  }
+
+  public long getClusterTimeoutMillis() {
+    return clusterTimeoutMillis;
+  }
+
+  public boolean isEventsEnabled() {
+    return isEventsEnabled;
+  }
+
+  public boolean isPrivateEventsEnabled() {
+    return isPrivateEventsEnabled;
+  }
+
+  public int getEventsBatchSize() {
+    return eventsBatchSize;
+  }
+
+  public long getEventsFlushMillis() {
+    return eventsFlushMillis;
+  }
+
+  public int getEventsQueueCapacity() {
+    return eventsQueueCapacity;
+  }
+
+  public ServerEngine createEngine() {
+    return switch (engineType) {
+      case BLOCKING -> new BlockingServerEngine(port, false);
+      case VIRTUAL -> new BlockingServerEngine(port, true);
+      case NIO -> new NioServerEngine(port, eventLoopThreads);
+    };
+  }
+
+  public boolean isMetricsJmxEnabled() {
+    return isMetricsJmxEnabled;
+  }
+
+  public int getJfrSampleInterval() {
+    return jfrSampleInterval;
+  }
+
+  public long getSessionTtlMillis() {
+    return sessionTtlMillis;
+  }
+
+  public String getSessionSecret() {
+    return sessionSecret;
+  }
+
+  public int getActiveListPageSize() {
+    return activeListPageSize;
+  }
+}
@@ -0,0 +1,17 @@
+package otus.project.server;
+
+import java.io.IOException;
+
+/**
+ * Сетевой движок сервера: принимает подключения и передает сообщения клиентам-обработчикам
+ */
+public interface ServerEngine {
+  /**
+   * Запуск движка. Метод блокируется до остановки движка
+   *
+   * @param server сервер
+   */
+  void start(Server server) throws IOException;
+
+  void stop();
+}
@@ -0,0 +1,335 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otus.project.server.history.MessageHistory;
+import otus.project.server.metrics.LatencyHistogram;
+import otus.project.server.metrics.Meter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики сервера: подключения, сообщения, аутентификация, время рассылки и задержки запросов к БД.
+ * Счетчики полосатые (LongAdder), поэтому запись из множества потоков не создает общей точки конкуренции;
+ * показатели существующих компонентов (кэш, история, запись событий, очередь аутентификации)
+ * читаются из них в момент запроса
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+  private static final Logger logger = LogManager.getLogger(ServerMetrics.class.getName());
+  private static final String DOMAIN = "otus.project.server";
+  private final Server server;
+  private final LongAdder connectionsOpened;
+  private final LongAdder connectionsClosed;
+  private final Meter messagesIn;
+  private final Meter messagesOut;
+  private final Meter outboundDropped;
+  private final Meter authSuccess;
+  private final Meter authFailure;
+  private final Meter authRejected;
+  private final Meter registrationSuccess;
+  private final Meter registrationFailure;
+  private final Meter resumeSuccess;
+  private final Meter resumeFailure;
+  private final Map<String, LatencyHistogram> latencies;
+  private final LatencyHistogram authLatency;
+  private final LatencyHistogram broadcastFanOut;
+  private final List<ObjectName> registeredNames;
+
+  public ServerMetrics(Server server) {
+    this.server = server;
+    this.connectionsOpened = new LongAdder();
+    this.connectionsClosed = new LongAdder();
+    this.messagesIn = new Meter();
+    this.messagesOut = new Meter();
+    this.outboundDropped = new Meter();
+    this.authSuccess = new Meter();
+    this.authFailure = new Meter();
+    this.authRejected = new Meter();
+    this.registrationSuccess = new Meter();
+    this.registrationFailure = new Meter();
+    this.resumeSuccess = new Meter();
+    this.resumeFailure = new Meter();
+    this.latencies = new ConcurrentSkipListMap<>();
+    this.authLatency = getLatency("auth");
+    this.broadcastFanOut = getLatency("broadcast.fanout");
+    this.registeredNames = new ArrayList<>();
+  }
+
+  /**
+   * Гистограмма задержек по имени, создается при первом обращении
+   *
+   * @param name имя гистограммы, например db.addNewUser
+   * @return гистограмма
+   */
+  public LatencyHistogram getLatency(String name) {
+    return latencies.computeIfAbsent(name, key -> new LatencyHistogram());
+  }
+
+  public LatencyHistogram getBroadcastFanOut() {
+    return broadcastFanOut;
+  }
+
+  public void onConnected() {
+    connectionsOpened.increment();
+  }
+
+  public void onDisconnected() {
+    connectionsClosed.increment();
+  }
+
+  public void onMessageIn() {
+    messagesIn.mark();
+  }
+
+  public void onMessageOut() {
+    messagesOut.mark();
+  }
+
+  public void onOutboundDropped() {
+    outboundDropped.mark();
+  }
+
+  /**
+   * Учет завершения асинхронной аутентификации или регистрации
+   *
+   * @param isRegistration регистрация/аутентификация
+   * @param startNanos     время постановки запроса в очередь по System.nanoTime
+   * @param isSuccess      результат или null при ошибке
+   * @param error          ошибка выполнения запроса или null
+   */
+  public void onAuthentication(boolean isRegistration, long startNanos, Boolean isSuccess, Throwable error) {
+    if (error != null && error.getCause() instanceof RejectedExecutionException) {
+      authRejected.mark();
+      return;
+    }
+    authLatency.recordSince(startNanos);
+    boolean success = error == null && isSuccess;
+    if (isRegistration) {
+      (success ? registrationSuccess : registrationFailure).mark();
+    } else {
+      (success ? authSuccess : authFailure).mark();
+    }
+  }
+
+  /**
+   * Учет восстановления сессии по токену
+   *
+   * @param isSuccess сессия восстановлена/токен отклонен
+   */
+  public void onResume(boolean isSuccess) {
+    (isSuccess ? resumeSuccess : resumeFailure).mark();
+  }
+
+  /**
+   * Регистрация метрик в платформенном MBeanServer
+   */
+  public synchronized void registerMBeans() {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    try {
+      register(mBeanServer, new ObjectName(DOMAIN + ":type=ServerMetrics"), this);
+      for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+        register(mBeanServer, new ObjectName(DOMAIN + ":type=Latency,name=" + entry.getKey()), entry.getValue());
+      }
+    } catch (JMException e) {
+      logger.warn("Не удалось зарегистрировать метрики в JMX", e);
+    }
+  }
+
+  public synchronized void unregisterMBeans() {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registeredNames) {
+      try {
+        mBeanServer.unregisterMBean(name);
+      } catch (JMException e) {
+        logger.warn("Не удалось снять регистрацию метрики {} в JMX", name, e);
+      }
+    }
+    registeredNames.clear();
+  }
+
+  private void register(MBeanServer mBeanServer, ObjectName name, Object bean) throws JMException {
+    mBeanServer.registerMBean(bean, name);
+    registeredNames.add(name);
+  }
+
+  @Override
+  public long getConnectedClients() {
+    return connectionsOpened.sum() - connectionsClosed.sum();
+  }
+
+  @Override
+  public int getAuthenticatedClients() {
+    return server.getClientCount();
+  }
+
+  @Override
+  public long getMessagesIn() {
+    return messagesIn.getCount();
+  }
+
+  @Override
+  public double getMessagesInRate() {
+    return messagesIn.getRate();
+  }
+
+  @Override
+  public long getMessagesOut() {
+    return messagesOut.getCount();
+  }
+
+  @Override
+  public double getMessagesOutRate() {
+    return messagesOut.getRate();
+  }
+
+  @Override
+  public long getOutboundDropped() {
+    return outboundDropped.getCount();
+  }
+
+  @Override
+  public long getAuthSuccess() {
+    return authSuccess.getCount();
+  }
+
+  @Override
+  public long getAuthFailure() {
+    return authFailure.getCount();
+  }
+
+  @Override
+  public long getAuthRejected() {
+    return authRejected.getCount();
+  }
+
+  @Override
+  public double getAuthSuccessRate() {
+    return authSuccess.getRate();
+  }
+
+  @Override
+  public double getAuthFailureRate() {
+    return authFailure.getRate();
+  }
+
+  @Override
+  public long getRegistrationSuccess() {
+    return registrationSuccess.getCount();
+  }
+
+  @Override
+  public long getRegistrationFailure() {
+    return registrationFailure.getCount();
+  }
+
+  @Override
+  public long getResumeSuccess() {
+    return resumeSuccess.getCount();
+  }
+
+  @Override
+  public long getResumeFailure() {
+    return resumeFailure.getCount();
+  }
+
+  @Override
+  public int getActiveSessions() {
+    return server.getSessionManager().size();
+  }
+
+  @Override
+  public int getAuthQueueSize() {
+    return server.getAsyncAuthenticationProvider().getQueueSize();
+  }
+
+  @Override
+  public long getUserCacheHits() {
+    CachingUserStorage cache = getUserCache();
+    return cache != null ? cache.getHitCount() : 0;
+  }
+
+  @Override
+  public long getUserCacheMisses() {
+    CachingUserStorage cache = getUserCache();
+    return cache != null ? cache.getMissCount() : 0;
+  }
+
+  @Override
+  public long getHistoryDropped() {
+    MessageHistory messageHistory = server.getMessageHistory();
+    return messageHistory != null ? messageHistory.getDroppedCount() : 0;
+  }
+
+  @Override
+  public long getEventsWritten() {
+    ChatEventWriter chatEventWriter = server.getChatEventWriter();
+    return chatEventWriter != null ? chatEventWriter.getWrittenCount() : 0;
+  }
+
+  @Override
+  public long getEventsDropped() {
+    ChatEventWriter chatEventWriter = server.getChatEventWriter();
+    return chatEventWriter != null ? chatEventWriter.getDroppedCount() : 0;
+  }
+
+  @Override
+  public int getEventsQueueSize() {
+    ChatEventWriter chatEventWriter = server.getChatEventWriter();
+    return chatEventWriter != null ? chatEventWriter.getQueueSize() : 0;
+  }
+
+  @Override
+  public int getRoomCount() {
+    return server.getRoomManager().getRoomCount();
+  }
+
+  @Override
+  public String dump() {
+    StringBuilder sb = new StringBuilder("Метрики сервера:");
+    sb.append(String.format("%nПодключения: %d, в чате: %d, комнат: %d",
+            getConnectedClients(), getAuthenticatedClients(), getRoomCount()));
+    sb.append(String.format("%nСообщения от клиентов: %d, %.1f/с", getMessagesIn(), getMessagesInRate()));
+    sb.append(String.format("%nСообщения клиентам: %d, %.1f/с, отброшено при переполнении очереди: %d",
+            getMessagesOut(), getMessagesOutRate(), getOutboundDropped()));
+    sb.append(String.format("%nАутентификация: успешно %d (%.2f/с), отказ %d (%.2f/с), отклонено %d, в очереди %d",
+            getAuthSuccess(), getAuthSuccessRate(), getAuthFailure(), getAuthFailureRate(),
+            getAuthRejected(), getAuthQueueSize()));
+    sb.append(String.format("%nРегистрация: успешно %d, отказ %d", getRegistrationSuccess(), getRegistrationFailure()));
+    sb.append(String.format("%nВосстановление сессий: успешно %d, отказ %d, действующих сессий %d",
+            getResumeSuccess(), getResumeFailure(), getActiveSessions()));
+    sb.append(String.format("%nКэш пользователей: попаданий %d, промахов %d", getUserCacheHits(), getUserCacheMisses()));
+    sb.append(String.format("%nИстория: отброшено %d", getHistoryDropped()));
+    ChatEventWriter chatEventWriter = server.getChatEventWriter();
+    if (chatEventWriter != null) {
+      sb.append(String.format("%nСобытия в БД: записано %d, пакетов %d (в среднем %.1f), отброшено %d, в очереди %d, сброс в среднем %.2f мс, максимум %.2f мс",
+              chatEventWriter.getWrittenCount(), chatEventWriter.getBatchCount(), chatEventWriter.getAverageBatchSize(),
+              chatEventWriter.getDroppedCount(), chatEventWriter.getQueueSize(),
+              chatEventWriter.getAverageFlushMillis(), chatEventWriter.getMaxFlushMillis()));
+    }
+    sb.append(String.format("%nЗадержки, мкс: количество / среднее / p50 / p99 / p99.9 / максимум"));
+    for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      sb.append(String.format("%n  %s: %d / %.1f / %.1f / %.1f / %.1f / %.1f", entry.getKey(), histogram.getCount(),
+              histogram.getMeanMicros(), histogram.getP50Micros(), histogram.getP99Micros(),
+              histogram.getP999Micros(), histogram.getMaxMicros()));
+    }
+    return sb.toString();
+  }
+
+  private CachingUserStorage getUserCache() {
+    if (server.getAuthenticationProvider() instanceof DBProvider dbProvider
+            && dbProvider.getUserStorage() instanceof CachingUserStorage cache) {
+      return cache;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,62 @@
+package otus.project.server;
+
+/**
+ * Метрики сервера в JMX (otus.project.server:type=ServerMetrics). Гистограммы задержек
+ * регистрируются отдельно как otus.project.server:type=Latency,name=...
+ */
+public interface ServerMetricsMXBean {
+  long getConnectedClients();
+
+  int getAuthenticatedClients();
+
+  long getMessagesIn();
+
+  double getMessagesInRate();
+
+  long getMessagesOut();
+
+  double getMessagesOutRate();
+
+  long getOutboundDropped();
+
+  long getAuthSuccess();
+
+  long getAuthFailure();
+
+  long getAuthRejected();
+
+  double getAuthSuccessRate();
+
+  double getAuthFailureRate();
+
+  long getRegistrationSuccess();
+
+  long getRegistrationFailure();
+
+  long getResumeSuccess();
+
+  long getResumeFailure();
+
+  int getActiveSessions();
+
+  int getAuthQueueSize();
+
+  long getUserCacheHits();
+
+  long getUserCacheMisses();
+
+  long getHistoryDropped();
+
+  long getEventsWritten();
+
+  long getEventsDropped();
+
+  int getEventsQueueSize();
+
+  int getRoomCount();
+
+  /**
+   * Текстовый отчет по всем метрикам, тот же, что выдает команда /metrics
+   */
+  String dump();
+}
@@ -0,0 +1,193 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таблица сессий для восстановления подключения без обращения к БД.
+ * Токен сессии имеет вид base64(id сессии + срок действия) "." base64(HMAC-SHA256), поэтому поддельный
+ * или просроченный токен отклоняется без поиска в таблице. Токен одноразовый: при восстановлении
+ * сессия заменяется новой с новым токеном. Сессии хранятся в памяти узла, выдавшего токен
+ */
+public class SessionManager {
+  private static final Logger logger = LogManager.getLogger(SessionManager.class.getName());
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int ID_SIZE = 16;
+  private static final int PAYLOAD_SIZE = ID_SIZE + Long.BYTES;
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+  private final SecretKeySpec key;
+  private final long ttlMillis;
+  private final SecureRandom random;
+  private final Map<String, Session> sessions;
+  private final ThreadLocal<Mac> macs;
+  private final ScheduledExecutorService cleaner;
+
+  /**
+   * @param secret    ключ подписи токенов; пустой - случайный ключ, токены действительны до перезапуска
+   * @param ttlMillis срок действия сессии, мс
+   */
+  public SessionManager(String secret, long ttlMillis) {
+    this.random = new SecureRandom();
+    byte[] keyBytes;
+    if (secret.isEmpty()) {
+      keyBytes = new byte[32];
+      random.nextBytes(keyBytes);
+    } else {
+      keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+    }
+    this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+    this.ttlMillis = ttlMillis;
+    this.sessions = new ConcurrentHashMap<>();
+    this.macs = ThreadLocal.withInitial(this::createMac);
+    this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "session-cleaner");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public void start() {
+    long period = Math.max(1000L, Math.min(ttlMillis, 60_000L));
+    cleaner.scheduleAtFixedRate(this::removeExpired, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Создание сессии для пользователя, прошедшего аутентификацию
+   *
+   * @param username    имя пользователя
+   * @param accountName имя учетной записи в БД
+   * @param roles       роли пользователя
+   * @return сессия с токеном для клиента
+   */
+  public Session create(String username, String accountName, EnumSet<Role> roles) {
+    byte[] id = new byte[ID_SIZE];
+    random.nextBytes(id);
+    long expiresAt = System.currentTimeMillis() + ttlMillis;
+    byte[] payload = ByteBuffer.allocate(PAYLOAD_SIZE).put(id).putLong(expiresAt).array();
+    String token = ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(payload));
+    Session session = new Session(ENCODER.encodeToString(id), token, username, accountName, EnumSet.copyOf(roles),
+            expiresAt);
+    sessions.put(session.id(), session);
+    return session;
+  }
+
+  /**
+   * Проверка токена и изъятие сессии из таблицы
+   *
+   * @param token токен сессии
+   * @return сессия или null, если токен поддельный, просрочен или уже использован
+   */
+  public Session resume(String token) {
+    int separator = token.indexOf('.');
+    if (separator < 0) {
+      return null;
+    }
+    byte[] payload;
+    byte[] signature;
+    try {
+      payload = DECODER.decode(token.substring(0, separator));
+      signature = DECODER.decode(token.substring(separator + 1));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (payload.length != PAYLOAD_SIZE || !MessageDigest.isEqual(sign(payload), signature)) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(payload);
+    byte[] id = new byte[ID_SIZE];
+    buffer.get(id);
+    if (buffer.getLong() < System.currentTimeMillis()) {
+      return null;
+    }
+    return sessions.remove(ENCODER.encodeToString(id));
+  }
+
+  /**
+   * Завершение сессии, например при выходе из чата командой /exit
+   */
+  public void invalidate(String sessionId) {
+    if (sessionId != null) {
+      sessions.remove(sessionId);
+    }
+  }
+
+  /**
+   * Завершение всех сессий пользователя: после бана или изменения ролей нужна новая аутентификация
+   */
+  public void invalidateUser(String username) {
+    sessions.values().removeIf(session -> session.username().equals(username));
+  }
+
+  /**
+   * Перенос сессии на новое имя пользователя после смены ника
+   */
+  public void rename(String sessionId, String newUsername) {
+    if (sessionId != null) {
+      sessions.computeIfPresent(sessionId, (id, session) ->
+              new Session(id, session.token(), newUsername, session.accountName(), session.roles(),
+                      session.expiresAt()));
+    }
+  }
+
+  public int size() {
+    return sessions.size();
+  }
+
+  public void close() {
+    cleaner.shutdownNow();
+  }
+
+  private void removeExpired() {
+    long now = System.currentTimeMillis();
+    int before = sessions.size();
+    sessions.values().removeIf(session -> session.expiresAt() < now);
+    int removed = before - sessions.size();
+    if (removed > 0) {
+      logger.debug("Удалено просроченных сессий: {}", removed);
+    }
+  }
+
+  private byte[] sign(byte[] payload) {
+    return macs.get().doFinal(payload);
+  }
+
+  private Mac createMac() {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Алгоритм " + ALGORITHM + " недоступен", e);
+    }
+  }
+
+  /**
+   * Сессия пользователя
+   *
+   * @param id        идентификатор сессии
+   * @param token     токен, выданный клиенту
+   * @param username    имя пользователя, с учетом смены ника
+   * @param accountName имя учетной записи в БД
+   * @param roles       роли пользователя на момент аутентификации
+   * @param expiresAt   срок действия, мс
+   */
+  public record Session(String id, String token, String username, String accountName, EnumSet<Role> roles,
+                        long expiresAt) {
+  }
+}
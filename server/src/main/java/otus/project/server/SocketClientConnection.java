@@ -0,0 +1,130 @@
+package otus.project.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import otus.project.common.BinaryFrame;
+import otus.project.server.jfr.PipelineTracing;
+import otus.project.server.jfr.WriteEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Блокирующее подключение клиента поверх java.net.Socket.
+ * Чтение выполняет поток клиента, запись - отдельный поток, разбирающий исходящую очередь
+ */
+public class SocketClientConnection implements ClientConnection {
+  private static final Logger logger = LogManager.getLogger(SocketClientConnection.class.getName());
+  private final Socket socket;
+  private final DataInputStream in;
+  private final OutputStream out;
+  private volatile boolean isBinaryProtocol;
+
+  public SocketClientConnection(Socket socket) throws IOException {
+    this.socket = socket;
+    this.in = new DataInputStream(socket.getInputStream());
+    this.out = new BufferedOutputStream(socket.getOutputStream());
+  }
+
+  /**
+   * Чтение и обработка очередного сообщения от клиента
+   *
+   * @param clientHandler клиент-обработчик
+   * @return true/false продолжать/завершить работу с клиентом
+   */
+  public boolean handleNextMessage(ClientHandler clientHandler) throws IOException {
+    if (isBinaryProtocol) {
+      return clientHandler.handleFrame(BinaryFrame.read(in));
+    }
+    return clientHandler.handleMessage(in.readUTF());
+  }
+
+  /**
+   * Отправка сообщений из исходящей очереди до ее закрытия.
+   * Буфер сбрасывается в сокет, когда очередь опустела, поэтому пачка сообщений уходит одной записью
+   *
+   * @param clientHandler клиент-обработчик, чья исходящая очередь отправляется
+   */
+  public void writeMessages(ClientHandler clientHandler) {
+    OutboundQueue outboundQueue = clientHandler.getOutboundQueue();
+    try {
+      MessageFrame frame;
+      WriteEvent event = null;
+      int frames = 0;
+      long bytes = 0;
+      while ((frame = outboundQueue.take()) != null) {
+        if (event == null) {
+          event = new WriteEvent();
+          event.begin();
+        }
+        frame.writeTo(out);
+        frames++;
+        bytes += frame.size();
+        if (outboundQueue.isEmpty()) {
+          out.flush();
+          if (event.shouldCommit() && PipelineTracing.isSampled()) {
+            event.username = clientHandler.getUsername();
+            event.frames = frames;
+            event.bytes = bytes;
+            event.commit();
+          }
+          event = null;
+          frames = 0;
+          bytes = 0;
+        }
+      }
+      out.flush();
+    } catch (IOException e) {
+      logger.error("Ошибка при отправке сообщения клиенту в исходящий поток", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      closeSocket();
+    }
+  }
+
+  @Override
+  public void onMessageQueued() {
+    // поток записи сам ожидает сообщения в очереди
+  }
+
+  @Override
+  public void useBinaryProtocol() {
+    isBinaryProtocol = true;
+  }
+
+  @Override
+  public void close() {
+    // сокет закрывает поток записи, когда отправит оставшиеся в очереди сообщения
+  }
+
+  @Override
+  public void abort() {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      logger.error("Ошибка при закрытии сокета", e);
+    }
+  }
+
+  private void closeSocket() {
+    try {
+      in.close();
+    } catch (IOException e) {
+      logger.error("Ошибка при закрытии входящего потока", e);
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      logger.error("Ошибка при закрытии исходящего потока", e);
+    }
+    try {
+      socket.close();
+    } catch (IOException e) {
+      logger.error("Ошибка при закрытии сокета", e);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package otus.project.server;
+
+import otus.project.server.jfr.DatabaseEvent;
+import otus.project.server.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Обертка над хранилищем пользователей, измеряющая время каждого запроса к БД
+ * и записывающая его событием JFR. Ставится под кэшем, поэтому попадания в кэш не учитываются
+ */
+public class TimedUserStorage implements UserStorage {
+  private final UserStorage userStorage;
+  private final Query usernameByLoginAndPassword;
+  private final Query userIdByName;
+  private final Query roleIdByRolename;
+  private final Query userRolesByUsername;
+  private final Query newUser;
+  private final Query roleToUser;
+  private final Query roleForUserDeletion;
+
+  public TimedUserStorage(UserStorage userStorage, ServerMetrics metrics) {
+    this.userStorage = userStorage;
+    this.usernameByLoginAndPassword = new Query("getUsernameByLoginAndPassword", metrics);
+    this.userIdByName = new Query("getUserIdByName", metrics);
+    this.roleIdByRolename = new Query("getRoleIdByRolename", metrics);
+    this.userRolesByUsername = new Query("getUserRolesByUsername", metrics);
+    this.newUser = new Query("addNewUser", metrics);
+    this.roleToUser = new Query("addRoleToUser", metrics);
+    this.roleForUserDeletion = new Query("deleteRoleForUser", metrics);
+  }
+
+  @Override
+  public String getUsernameByLoginAndPassword(String login, String password) {
+    return usernameByLoginAndPassword.execute(() -> userStorage.getUsernameByLoginAndPassword(login, password));
+  }
+
+  @Override
+  public int getUserIdByName(String username) {
+    return userIdByName.execute(() -> userStorage.getUserIdByName(username));
+  }
+
+  @Override
+  public int getRoleIdByRolename(String role) {
+    return roleIdByRolename.execute(() -> userStorage.getRoleIdByRolename(role));
+  }
+
+  @Override
+  public List<Role> getUserRolesByUsername(String username) {
+    return userRolesByUsername.execute(() -> userStorage.getUserRolesByUsername(username));
+  }
+
+  @Override
+  public RegistrationStatus addNewUser(String login, String password, String username) {
+    return newUser.execute(() -> userStorage.addNewUser(login, password, username));
+  }
+
+  @Override
+  public boolean addRoleToUser(String username, int id_user, int id_role) {
+    return roleToUser.execute(() -> userStorage.addRoleToUser(username, id_user, id_role));
+  }
+
+  @Override
+  public boolean deleteRoleForUser(String username, int id_user, int id_role) {
+    return roleForUserDeletion.execute(() -> userStorage.deleteRoleForUser(username, id_user, id_role));
+  }
+
+  private static class Query {
+    private final String name;
+    private final LatencyHistogram latency;
+
+    Query(String name, ServerMetrics metrics) {
+      this.name = name;
+      this.latency = metrics.getLatency("db." + name);
+    }
+
+    <T> T execute(Supplier<T> query) {
+      DatabaseEvent event = new DatabaseEvent();
+      event.begin();
+      long start = System.nanoTime();
+      try {
+        return query.get();
+      } finally {
+        latency.recordSince(start);
+        if (event.shouldCommit()) {
+          event.query = name;
+          event.commit();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package otus.project.server;
+
+import java.util.List;
+
+/**
+ * Хранилище пользователей и их ролей
+ */
+public interface UserStorage {
+  /**
+   * @return имя пользователя/null
+   */
+  String getUsernameByLoginAndPassword(String login, String password);
+
+  /**
+   * @return id пользователя/-1
+   */
+  int getUserIdByName(String username);
+
+  /**
+   * @return id роли/-1
+   */
+  int getRoleIdByRolename(String role);
+
+  List<Role> getUserRolesByUsername(String username);
+
+  /**
+   * Добавление нового пользователя с ролью USER
+   */
+  RegistrationStatus addNewUser(String login, String password, String username);
+
+  boolean addRoleToUser(String username, int id_user, int id_role);
+
+  boolean deleteRoleForUser(String username, int id_user, int id_role);
+}
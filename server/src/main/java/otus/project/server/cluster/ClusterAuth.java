@@ -0,0 +1,59 @@
+package otus.project.server.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Проверка узлов кластера по общему секрету. Принимающий узел отправляет случайный вызов,
+ * подключающийся узел отвечает HMAC-SHA256 от вызова и своего имени, поэтому без секрета
+ * нельзя ни представиться узлом, ни повторить перехваченное приветствие
+ */
+final class ClusterAuth {
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int CHALLENGE_SIZE = 32;
+  private final SecretKeySpec key;
+  private final SecureRandom random;
+
+  ClusterAuth(String secret) {
+    if (secret.isEmpty()) {
+      throw new IllegalArgumentException("Для кластера необходимо задать общий секрет chat.cluster.secret");
+    }
+    this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    this.random = new SecureRandom();
+  }
+
+  String challenge() {
+    byte[] challenge = new byte[CHALLENGE_SIZE];
+    random.nextBytes(challenge);
+    return Base64.getEncoder().encodeToString(challenge);
+  }
+
+  String sign(String challenge, String node) {
+    return Base64.getEncoder().encodeToString(mac(challenge + "\n" + node));
+  }
+
+  boolean verify(String challenge, String node, String signature) {
+    byte[] actual;
+    try {
+      actual = Base64.getDecoder().decode(signature);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    return MessageDigest.isEqual(mac(challenge + "\n" + node), actual);
+  }
+
+  private byte[] mac(String data) {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Алгоритм " + ALGORITHM + " недоступен", e);
+    }
+  }
+}
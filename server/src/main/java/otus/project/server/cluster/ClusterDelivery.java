@@ -0,0 +1,38 @@
+package otus.project.server.cluster;
+
+import java.util.Collection;
+
+/**
+ * Доставка сообщений, пришедших от других узлов кластера, клиентам этого узла
+ */
+public interface ClusterDelivery {
+  /**
+   * Рассылка сообщения общего чата клиентам узла
+   *
+   * @param message сообщение с отметкой времени
+   */
+  void deliverBroadcast(String message);
+
+  /**
+   * Доставка личного сообщения клиенту узла
+   *
+   * @param sender        отправитель
+   * @param senderAccount учетная запись отправителя в БД
+   * @param recipient     получатель
+   * @param message       сообщение с отметкой времени
+   */
+  void deliverPrivateMessage(String sender, String senderAccount, String recipient, String message);
+
+  /**
+   * Блокировка клиента узла
+   *
+   * @param actor  администратор, выполнивший блокировку
+   * @param target заблокированный пользователь
+   */
+  void deliverBan(String actor, String target);
+
+  /**
+   * Имена пользователей, подключенных к узлу
+   */
+  Collection<String> localUsernames();
+}
@@ -0,0 +1,54 @@
+package otus.project.server.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Кадр протокола обмена между узлами кластера: код операции, номер запроса и строковые поля.
+ * Номер запроса связывает ответ RESULT с запросом CLAIM/LOCATE, для остальных операций он равен 0
+ */
+final class ClusterFrame {
+  static final byte HELLO = 1;
+  static final byte CLAIM = 2;
+  static final byte RELEASE = 3;
+  static final byte LOCATE = 4;
+  static final byte RESULT = 5;
+  static final byte BROADCAST = 6;
+  static final byte PRIVATE = 7;
+  static final byte BAN = 8;
+  static final byte CHALLENGE = 9;
+
+  final byte opcode;
+  final long requestId;
+  final String[] fields;
+
+  ClusterFrame(byte opcode, long requestId, String... fields) {
+    this.opcode = opcode;
+    this.requestId = requestId;
+    this.fields = fields;
+  }
+
+  String field(int index) {
+    return fields[index];
+  }
+
+  void writeTo(DataOutputStream out) throws IOException {
+    out.writeByte(opcode);
+    out.writeLong(requestId);
+    out.writeByte(fields.length);
+    for (String field : fields) {
+      out.writeUTF(field);
+    }
+  }
+
+  static ClusterFrame readFrom(DataInputStream in) throws IOException {
+    byte opcode = in.readByte();
+    long requestId = in.readLong();
+    String[] fields = new String[in.readUnsignedByte()];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = in.readUTF();
+    }
+    return new ClusterFrame(opcode, requestId, fields);
+  }
+}
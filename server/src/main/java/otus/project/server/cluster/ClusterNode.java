@@ -0,0 +1,285 @@
+package otus.project.server.cluster;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Узел кластера чата. Узлы соединены каждый с каждым по TCP и пересылают друг другу
+ * сообщения общего чата, личные сообщения и блокировки.
+ * Для каждого имени пользователя консистентным хешированием выбирается узел-владелец,
+ * который хранит, на каком узле это имя занято. Через владельца проверяется уникальность имени
+ * и ищется узел получателя личного сообщения или блокировки.
+ * Если владелец недоступен, имя считается свободным, чтобы отказ узла не блокировал вход в чат.
+ * Порт кластера слушается только на заданном адресе, а подключившийся узел должен быть в списке узлов
+ * и подтвердить знание общего секрета (см. ClusterAuth), иначе соединение закрывается
+ */
+public class ClusterNode {
+  private static final Logger logger = LogManager.getLogger(ClusterNode.class.getName());
+  private final String localNode;
+  private final String bindAddress;
+  private final int port;
+  private final long timeoutMillis;
+  private final ClusterAuth auth;
+  private final ClusterDelivery delivery;
+  private final HashRing ring;
+  private final Map<String, PeerLink> links;
+  private final Map<String, String> directory;
+  private final Thread acceptor;
+  private ServerSocket serverSocket;
+
+  /**
+   * @param host          имя хоста этого узла, под которым его знают остальные узлы
+   * @param bindAddress   адрес, на котором принимаются соединения от других узлов
+   * @param port          порт для соединений от других узлов
+   * @param peers         остальные узлы кластера в виде host:port
+   * @param secret        общий секрет узлов кластера
+   * @param timeoutMillis ожидание ответа узла-владельца
+   * @param delivery      доставка пришедших сообщений клиентам этого узла
+   */
+  public ClusterNode(String host, String bindAddress, int port, List<String> peers, String secret, long timeoutMillis,
+                     ClusterDelivery delivery) {
+    this.localNode = host + ":" + port;
+    this.bindAddress = bindAddress;
+    this.port = port;
+    this.timeoutMillis = timeoutMillis;
+    this.auth = new ClusterAuth(secret);
+    this.delivery = delivery;
+    List<String> nodes = new ArrayList<>(peers);
+    nodes.add(localNode);
+    this.ring = new HashRing(nodes);
+    this.links = new HashMap<>();
+    for (String peer : peers) {
+      links.put(peer, new PeerLink(localNode, peer, auth, (int) timeoutMillis, () -> reclaimUsernames(peer)));
+    }
+    this.directory = new ConcurrentHashMap<>();
+    this.acceptor = new Thread(this::acceptPeers, "cluster-acceptor");
+    this.acceptor.setDaemon(true);
+  }
+
+  public String getLocalNode() {
+    return localNode;
+  }
+
+  public void start() throws IOException {
+    serverSocket = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+    acceptor.start();
+    for (PeerLink link : links.values()) {
+      link.start();
+    }
+    logger.info("Узел кластера {} запущен, других узлов: {}", localNode, links.size());
+  }
+
+  public void close() {
+    for (PeerLink link : links.values()) {
+      link.close();
+    }
+    try {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    } catch (IOException e) {
+      logger.error("Не удалось закрыть порт кластера", e);
+    }
+  }
+
+  /**
+   * Занятие имени пользователя в кластере. Запрос к владельцу имени не блокирует вызывающий поток,
+   * результат приходит в потоке соединения с владельцем или в потоке таймаута
+   *
+   * @param username имя пользователя
+   * @return true/false имя занято этим узлом/имя уже занято на другом узле
+   */
+  public CompletableFuture<Boolean> claim(String username) {
+    String owner = ring.ownerOf(username);
+    if (owner.equals(localNode)) {
+      return CompletableFuture.completedFuture(claim(username, localNode));
+    }
+    return links.get(owner).request(ClusterFrame.CLAIM, username)
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .handle((result, error) -> {
+              if (error == null) {
+                return "1".equals(result);
+              }
+              // Доступность важнее строгой уникальности: пока владелец недоступен, одно и то же имя
+              // может быть занято на двух узлах (split-brain). Личные сообщения и бан для такого имени
+              // доставляются узлу, записанному у владельца, а после восстановления связи каталог владельца
+              // заполняется повторно (reclaimUsernames) и в нем остается узел, занявший имя первым
+              logger.warn("Узел {} не подтвердил имя {}, имя занято без проверки в кластере", owner, username);
+              return true;
+            });
+  }
+
+  /**
+   * Освобождение имени пользователя в кластере
+   *
+   * @param username имя пользователя
+   */
+  public void release(String username) {
+    String owner = ring.ownerOf(username);
+    if (owner.equals(localNode)) {
+      directory.remove(username, localNode);
+    } else {
+      links.get(owner).send(new ClusterFrame(ClusterFrame.RELEASE, 0, username));
+    }
+  }
+
+  /**
+   * Поиск узла, на котором находится пользователь
+   *
+   * @param username имя пользователя
+   * @return идентификатор узла или null, если пользователя нет в чате или владелец имени недоступен
+   */
+  public CompletableFuture<String> locate(String username) {
+    String owner = ring.ownerOf(username);
+    if (owner.equals(localNode)) {
+      return CompletableFuture.completedFuture(directory.get(username));
+    }
+    return links.get(owner).request(ClusterFrame.LOCATE, username)
+            .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+            .handle((node, error) -> error != null || node.isEmpty() ? null : node);
+  }
+
+  /**
+   * Занято ли имя пользователя на каком-либо узле кластера
+   */
+  public boolean isUsernameBusy(String username) {
+    return locate(username).join() != null;
+  }
+
+  public boolean isLocalNode(String node) {
+    return localNode.equals(node);
+  }
+
+  /**
+   * Пересылка сообщения общего чата всем узлам
+   *
+   * @param message сообщение с отметкой времени
+   */
+  public void broadcast(String message) {
+    ClusterFrame frame = new ClusterFrame(ClusterFrame.BROADCAST, 0, message);
+    for (PeerLink link : links.values()) {
+      link.send(frame);
+    }
+  }
+
+  /**
+   * Пересылка личного сообщения на узел получателя
+   *
+   * @return true/false сообщение отправлено/узел недоступен
+   */
+  public boolean sendPrivateMessage(String node, String sender, String senderAccount, String recipient,
+                                    String message) {
+    PeerLink link = links.get(node);
+    return link != null
+            && link.send(new ClusterFrame(ClusterFrame.PRIVATE, 0, sender, recipient, message, senderAccount));
+  }
+
+  /**
+   * Пересылка блокировки на узел пользователя
+   *
+   * @return true/false блокировка отправлена/узел недоступен
+   */
+  public boolean ban(String node, String actor, String target) {
+    PeerLink link = links.get(node);
+    return link != null && link.send(new ClusterFrame(ClusterFrame.BAN, 0, actor, target));
+  }
+
+  private boolean claim(String username, String node) {
+    String current = directory.putIfAbsent(username, node);
+    return current == null || current.equals(node);
+  }
+
+  /**
+   * Повторное занятие имен клиентов этого узла у владельца после (пере)подключения к нему,
+   * владелец мог перезапуститься и потерять свой каталог имен
+   */
+  private void reclaimUsernames(String peer) {
+    PeerLink link = links.get(peer);
+    for (String username : delivery.localUsernames()) {
+      if (ring.ownerOf(username).equals(peer)) {
+        link.request(ClusterFrame.CLAIM, username);
+      }
+    }
+  }
+
+  private void acceptPeers() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        Thread thread = new Thread(() -> handlePeer(socket), "cluster-peer-" + socket.getPort());
+        thread.setDaemon(true);
+        thread.start();
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          logger.error("Ошибка при подключении узла кластера", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Обработка входящего соединения от другого узла: запросы к каталогу имен и пересланные сообщения
+   */
+  private void handlePeer(Socket socket) {
+    String node = null;
+    try (socket) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      socket.setSoTimeout((int) timeoutMillis);
+      String challenge = auth.challenge();
+      new ClusterFrame(ClusterFrame.CHALLENGE, 0, challenge).writeTo(out);
+      out.flush();
+      ClusterFrame hello = ClusterFrame.readFrom(in);
+      if (hello.opcode != ClusterFrame.HELLO || hello.fields.length != 2 || !links.containsKey(hello.field(0))
+              || !auth.verify(challenge, hello.field(0), hello.field(1))) {
+        logger.warn("Подключение {} не прошло проверку узла кластера, соединение закрыто", socket.getRemoteSocketAddress());
+        return;
+      }
+      socket.setSoTimeout(0);
+      node = hello.field(0);
+      while (true) {
+        ClusterFrame frame = ClusterFrame.readFrom(in);
+        switch (frame.opcode) {
+          case ClusterFrame.CLAIM -> reply(out, frame, claim(frame.field(0), node) ? "1" : "0");
+          case ClusterFrame.RELEASE -> directory.remove(frame.field(0), node);
+          case ClusterFrame.LOCATE -> reply(out, frame, directory.getOrDefault(frame.field(0), ""));
+          case ClusterFrame.BROADCAST -> delivery.deliverBroadcast(frame.field(0));
+          case ClusterFrame.PRIVATE -> delivery.deliverPrivateMessage(frame.field(0), frame.field(3),
+                  frame.field(1), frame.field(2));
+          case ClusterFrame.BAN -> delivery.deliverBan(frame.field(0), frame.field(1));
+          default -> logger.warn("Неизвестная операция {} от узла {}", frame.opcode, node);
+        }
+      }
+    } catch (IOException e) {
+      if (node != null) {
+        logger.info("Узел кластера {} отключился", node);
+      }
+    } finally {
+      if (node != null) {
+        directory.values().removeIf(node::equals);
+      }
+    }
+  }
+
+  private void reply(DataOutputStream out, ClusterFrame request, String result) throws IOException {
+    new ClusterFrame(ClusterFrame.RESULT, request.requestId, result).writeTo(out);
+    out.flush();
+  }
+}
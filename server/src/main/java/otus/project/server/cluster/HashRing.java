@@ -0,0 +1,51 @@
+package otus.project.server.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Консистентное хеширование имен пользователей по узлам кластера.
+ * Каждый узел занимает несколько виртуальных точек на кольце, владелец имени - первый узел
+ * по часовой стрелке от хеша имени
+ */
+final class HashRing {
+  private static final int VIRTUAL_NODES = 128;
+  private final TreeMap<Long, String> ring;
+
+  HashRing(Collection<String> nodes) {
+    this.ring = new TreeMap<>();
+    for (String node : nodes) {
+      for (int i = 0; i < VIRTUAL_NODES; i++) {
+        ring.put(hash(node + "#" + i), node);
+      }
+    }
+  }
+
+  /**
+   * Узел-владелец имени пользователя
+   *
+   * @param username имя пользователя
+   * @return идентификатор узла
+   */
+  String ownerOf(String username) {
+    Map.Entry<Long, String> entry = ring.ceilingEntry(hash(username));
+    return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+  }
+
+  private static long hash(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+      long hash = 0;
+      for (int i = 0; i < 8; i++) {
+        hash = (hash << 8) | (digest[i] & 0xFF);
+      }
+      return hash;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
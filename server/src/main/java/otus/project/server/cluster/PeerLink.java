@@ -0,0 +1,201 @@
+package otus.project.server.cluster;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Исходящее соединение с другим узлом кластера. По нему отправляются запросы и сообщения этого узла,
+ * обратно приходят только ответы на запросы. При обрыве соединение восстанавливается,
+ * а ожидающие запросы завершаются ошибкой
+ */
+final class PeerLink {
+  private static final Logger logger = LogManager.getLogger(PeerLink.class.getName());
+  private static final int QUEUE_CAPACITY = 10000;
+  private static final long RECONNECT_DELAY = 1000L;
+  private final String localNode;
+  private final String peerNode;
+  private final ClusterAuth auth;
+  private final InetSocketAddress address;
+  private final int connectTimeoutMillis;
+  private final BlockingQueue<ClusterFrame> outbound;
+  private final Map<Long, CompletableFuture<String>> pendingRequests;
+  private final AtomicLong nextRequestId;
+  private final Runnable onConnected;
+  private final Thread connector;
+  private volatile Socket socket;
+  private volatile boolean isConnected;
+  private volatile boolean isRunning;
+
+  PeerLink(String localNode, String peerNode, ClusterAuth auth, int connectTimeoutMillis, Runnable onConnected) {
+    this.localNode = localNode;
+    this.peerNode = peerNode;
+    this.auth = auth;
+    int separator = peerNode.lastIndexOf(':');
+    this.address = new InetSocketAddress(peerNode.substring(0, separator), Integer.parseInt(peerNode.substring(separator + 1)));
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.outbound = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    this.pendingRequests = new ConcurrentHashMap<>();
+    this.nextRequestId = new AtomicLong();
+    this.onConnected = onConnected;
+    this.connector = new Thread(this::connectLoop, "cluster-link-" + peerNode);
+    this.connector.setDaemon(true);
+  }
+
+  String getPeerNode() {
+    return peerNode;
+  }
+
+  boolean isConnected() {
+    return isConnected;
+  }
+
+  void start() {
+    isRunning = true;
+    connector.start();
+  }
+
+  void close() {
+    isRunning = false;
+    connector.interrupt();
+    closeSocket();
+  }
+
+  /**
+   * Отправка кадра без ожидания ответа
+   *
+   * @return true/false кадр поставлен в очередь/узел недоступен или очередь заполнена
+   */
+  boolean send(ClusterFrame frame) {
+    if (!isConnected) {
+      return false;
+    }
+    if (!outbound.offer(frame)) {
+      logger.warn("Очередь отправки на узел {} заполнена, сообщение отброшено", peerNode);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Отправка запроса, ответ на который придет кадром RESULT
+   *
+   * @param opcode код операции
+   * @param fields поля запроса
+   * @return ответ узла
+   */
+  CompletableFuture<String> request(byte opcode, String... fields) {
+    long requestId = nextRequestId.incrementAndGet();
+    CompletableFuture<String> result = new CompletableFuture<>();
+    pendingRequests.put(requestId, result);
+    result.whenComplete((value, error) -> pendingRequests.remove(requestId));
+    if (!send(new ClusterFrame(opcode, requestId, fields))) {
+      result.completeExceptionally(new IOException("Узел " + peerNode + " недоступен"));
+    }
+    return result;
+  }
+
+  private void connectLoop() {
+    while (isRunning) {
+      Thread writer = null;
+      try {
+        Socket s = new Socket();
+        s.connect(address, connectTimeoutMillis);
+        s.setTcpNoDelay(true);
+        socket = s;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        s.setSoTimeout(connectTimeoutMillis);
+        ClusterFrame challenge = ClusterFrame.readFrom(in);
+        if (challenge.opcode != ClusterFrame.CHALLENGE) {
+          throw new IOException("Узел " + peerNode + " не прислал вызов проверки");
+        }
+        new ClusterFrame(ClusterFrame.HELLO, 0, localNode, auth.sign(challenge.field(0), localNode)).writeTo(out);
+        out.flush();
+        s.setSoTimeout(0);
+        outbound.clear();
+        writer = new Thread(() -> writeFrames(out), "cluster-out-" + peerNode);
+        writer.setDaemon(true);
+        writer.start();
+        isConnected = true;
+        logger.info("Установлено соединение с узлом кластера {}", peerNode);
+        onConnected.run();
+        readResults(in);
+      } catch (IOException e) {
+        if (isConnected) {
+          logger.warn("Потеряно соединение с узлом кластера {}", peerNode);
+        }
+      } finally {
+        isConnected = false;
+        if (writer != null) {
+          writer.interrupt();
+        }
+        closeSocket();
+        failPendingRequests();
+      }
+      try {
+        Thread.sleep(RECONNECT_DELAY);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void readResults(DataInputStream in) throws IOException {
+    while (true) {
+      ClusterFrame frame = ClusterFrame.readFrom(in);
+      if (frame.opcode == ClusterFrame.RESULT) {
+        CompletableFuture<String> result = pendingRequests.get(frame.requestId);
+        if (result != null) {
+          result.complete(frame.field(0));
+        }
+      }
+    }
+  }
+
+  private void writeFrames(DataOutputStream out) {
+    try {
+      while (true) {
+        outbound.take().writeTo(out);
+        if (outbound.isEmpty()) {
+          out.flush();
+        }
+      }
+    } catch (InterruptedException e) {
+      // соединение закрыто
+    } catch (IOException e) {
+      closeSocket();
+    }
+  }
+
+  private void failPendingRequests() {
+    IOException error = new IOException("Соединение с узлом " + peerNode + " разорвано");
+    for (CompletableFuture<String> result : pendingRequests.values()) {
+      result.completeExceptionally(error);
+    }
+  }
+
+  private void closeSocket() {
+    Socket s = socket;
+    if (s != null) {
+      try {
+        s.close();
+      } catch (IOException e) {
+        logger.error("Не удалось закрыть соединение с узлом {}", peerNode, e);
+      }
+    }
+  }
+}
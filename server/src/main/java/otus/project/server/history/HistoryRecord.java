@@ -0,0 +1,87 @@
+package otus.project.server.history;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запись истории сообщений: общее сообщение чата или личное сообщение между двумя пользователями.
+ * Формат записи: тип (1 байт), затем отправитель, получатель и текст - каждый как 2 байта длины + UTF-8.
+ * Участники личного сообщения хранятся как имена учетных записей в БД, а не ники: ник можно сменить,
+ * и освободившееся имя займет другой пользователь. Личные записи прежнего формата с никами (тип 1)
+ * не показываются никому
+ *
+ * @param isPrivate личное сообщение
+ * @param sender    учетная запись отправителя личного сообщения или пустая строка
+ * @param recipient учетная запись получателя личного сообщения или пустая строка, если она неизвестна узлу
+ * @param text      текст в том виде, в котором он был отправлен клиентам
+ */
+public record HistoryRecord(boolean isPrivate, String sender, String recipient, String text) {
+  private static final byte PUBLIC = 0;
+  private static final byte LEGACY_PRIVATE = 1;
+  private static final byte PRIVATE = 2;
+
+  public static HistoryRecord publicMessage(String text) {
+    return new HistoryRecord(false, "", "", text);
+  }
+
+  public static HistoryRecord privateMessage(String sender, String recipient, String text) {
+    return new HistoryRecord(true, sender, recipient, text);
+  }
+
+  /**
+   * Видна ли запись пользователю: общие сообщения видны всем, личные - только участникам
+   *
+   * @param accountName имя учетной записи пользователя в БД
+   */
+  public boolean isVisibleTo(String accountName) {
+    return !isPrivate || !accountName.isEmpty() && (sender.equals(accountName) || recipient.equals(accountName));
+  }
+
+  byte[] encode() {
+    byte[] senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+    byte[] recipientBytes = recipient.getBytes(StandardCharsets.UTF_8);
+    byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(1 + 6 + senderBytes.length + recipientBytes.length + textBytes.length);
+    buffer.put(isPrivate ? PRIVATE : PUBLIC);
+    putString(buffer, senderBytes);
+    putString(buffer, recipientBytes);
+    putString(buffer, textBytes);
+    return buffer.array();
+  }
+
+  /**
+   * Чтение записи из буфера сегмента абсолютными операциями, позиция буфера не меняется
+   *
+   * @param buffer   буфер сегмента
+   * @param position позиция записи
+   * @return запись
+   */
+  static HistoryRecord decode(ByteBuffer buffer, int position) {
+    byte type = buffer.get(position);
+    position++;
+    String sender = getString(buffer, position);
+    position += 2 + Short.toUnsignedInt(buffer.getShort(position));
+    String recipient = getString(buffer, position);
+    position += 2 + Short.toUnsignedInt(buffer.getShort(position));
+    String text = getString(buffer, position);
+    if (type == LEGACY_PRIVATE) {
+      return new HistoryRecord(true, "", "", text);
+    }
+    return new HistoryRecord(type == PRIVATE, sender, recipient, text);
+  }
+
+  private static void putString(ByteBuffer buffer, byte[] bytes) {
+    if (bytes.length > 0xFFFF) {
+      throw new IllegalArgumentException("Слишком длинное поле записи истории: " + bytes.length + " байт");
+    }
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  private static String getString(ByteBuffer buffer, int position) {
+    int length = Short.toUnsignedInt(buffer.getShort(position));
+    byte[] bytes = new byte[length];
+    buffer.get(position + 2, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
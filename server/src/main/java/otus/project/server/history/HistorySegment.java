@@ -0,0 +1,124 @@
+package otus.project.server.history;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Сегмент истории: файл данных и файл индекса, отображенные в память.
+ * Записи только дописываются в конец. Элемент индекса - время записи (8 байт),
+ * позиция записи в файле данных (4 байта) и ее длина (4 байта); нулевая длина - конец индекса.
+ * Пишет в сегмент один поток, читать можно из любых потоков
+ */
+class HistorySegment {
+  static final String DATA_SUFFIX = ".log";
+  static final String INDEX_SUFFIX = ".idx";
+  private static final int INDEX_ENTRY_SIZE = 16;
+  private static final int AVERAGE_RECORD_SIZE = 64;
+  private final long baseOffset;
+  private final Path dataPath;
+  private final Path indexPath;
+  private final MappedByteBuffer data;
+  private final MappedByteBuffer index;
+  private final int maxEntries;
+  private volatile int count;
+  private volatile long lastTimestamp;
+  private int writePosition;
+
+  private HistorySegment(long baseOffset, Path dataPath, Path indexPath, int size) throws IOException {
+    this.baseOffset = baseOffset;
+    this.dataPath = dataPath;
+    this.indexPath = indexPath;
+    this.maxEntries = Math.max(1, size / AVERAGE_RECORD_SIZE);
+    try (FileChannel dataChannel = FileChannel.open(dataPath,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+         FileChannel indexChannel = FileChannel.open(indexPath,
+                 StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      this.data = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) maxEntries * INDEX_ENTRY_SIZE);
+    }
+    recover();
+  }
+
+  /**
+   * Открытие существующего или создание нового сегмента
+   *
+   * @param directory  каталог истории
+   * @param baseOffset порядковый номер первой записи сегмента
+   * @param size       размер файла данных
+   * @return сегмент
+   */
+  static HistorySegment open(Path directory, long baseOffset, int size) throws IOException {
+    String name = String.format("%020d", baseOffset);
+    Path dataPath = directory.resolve(name + DATA_SUFFIX);
+    int mappedSize = Files.exists(dataPath) ? (int) Math.max(Files.size(dataPath), size) : size;
+    return new HistorySegment(baseOffset, dataPath, directory.resolve(name + INDEX_SUFFIX), mappedSize);
+  }
+
+  /**
+   * Восстановление количества записей и позиции записи по индексу
+   */
+  private void recover() {
+    int entries = 0;
+    while (entries < maxEntries && index.getInt(entries * INDEX_ENTRY_SIZE + 12) > 0) {
+      entries++;
+    }
+    if (entries > 0) {
+      int last = (entries - 1) * INDEX_ENTRY_SIZE;
+      writePosition = index.getInt(last + 8) + index.getInt(last + 12);
+      lastTimestamp = index.getLong(last);
+    }
+    count = entries;
+  }
+
+  /**
+   * Добавление записи в конец сегмента
+   *
+   * @param timestamp время записи
+   * @param record    закодированная запись
+   * @return true/false запись добавлена/в сегменте нет места
+   */
+  boolean append(long timestamp, byte[] record) {
+    int entry = count;
+    if (entry >= maxEntries || writePosition + record.length > data.capacity()) {
+      return false;
+    }
+    data.put(writePosition, record);
+    int indexPosition = entry * INDEX_ENTRY_SIZE;
+    index.putLong(indexPosition, timestamp);
+    index.putInt(indexPosition + 8, writePosition);
+    index.putInt(indexPosition + 12, record.length);
+    writePosition += record.length;
+    lastTimestamp = timestamp;
+    count = entry + 1;
+    return true;
+  }
+
+  HistoryRecord read(int entry) {
+    return HistoryRecord.decode(data, index.getInt(entry * INDEX_ENTRY_SIZE + 8));
+  }
+
+  int getCount() {
+    return count;
+  }
+
+  long getBaseOffset() {
+    return baseOffset;
+  }
+
+  long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  long getSizeOnDisk() {
+    return data.capacity() + (long) index.capacity();
+  }
+
+  void delete() throws IOException {
+    Files.deleteIfExists(dataPath);
+    Files.deleteIfExists(indexPath);
+  }
+}
@@ -0,0 +1,222 @@
+package otus.project.server.history;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * История сообщений чата в виде журнала из сегментов, отображенных в память.
+ * Сообщения ставятся в очередь и записываются отдельным потоком, поэтому рассылка не ждет диска.
+ * Старые сегменты удаляются по времени последней записи и по общему размеру истории
+ */
+public class MessageHistory {
+  private static final Logger logger = LogManager.getLogger(MessageHistory.class.getName());
+  private static final long RETENTION_CHECK_INTERVAL = 60_000L;
+  private final Path directory;
+  private final int segmentSize;
+  private final long retentionMillis;
+  private final long maxTotalSize;
+  private final BlockingQueue<HistoryRecord> pendingRecords;
+  private final List<HistorySegment> segments;
+  private final AtomicLong droppedCount;
+  private final Thread writer;
+  private volatile boolean isRunning;
+
+  /**
+   * @param directory       каталог с файлами сегментов
+   * @param segmentSize     размер файла данных сегмента, байт
+   * @param retentionMillis время хранения сегмента после его последней записи
+   * @param maxTotalSize    максимальный размер истории на диске, байт
+   * @param queueCapacity   максимальное количество сообщений, ожидающих записи
+   */
+  public MessageHistory(Path directory, int segmentSize, long retentionMillis, long maxTotalSize, int queueCapacity) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.retentionMillis = retentionMillis;
+    this.maxTotalSize = maxTotalSize;
+    this.pendingRecords = new ArrayBlockingQueue<>(queueCapacity);
+    this.segments = new CopyOnWriteArrayList<>();
+    this.droppedCount = new AtomicLong();
+    this.writer = new Thread(this::writeRecords, "message-history");
+    this.writer.setDaemon(true);
+  }
+
+  /**
+   * Открытие сохраненных сегментов и запуск потока записи
+   */
+  public void start() throws IOException {
+    Files.createDirectories(directory);
+    List<Long> baseOffsets = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.map(path -> path.getFileName().toString())
+              .filter(name -> name.endsWith(HistorySegment.DATA_SUFFIX))
+              .map(name -> Long.parseLong(name.substring(0, name.length() - HistorySegment.DATA_SUFFIX.length())))
+              .sorted()
+              .forEach(baseOffsets::add);
+    }
+    for (long baseOffset : baseOffsets) {
+      segments.add(HistorySegment.open(directory, baseOffset, segmentSize));
+    }
+    if (segments.isEmpty()) {
+      segments.add(HistorySegment.open(directory, 0, segmentSize));
+    }
+    isRunning = true;
+    writer.start();
+    logger.info("История сообщений: {}, сегментов: {}", directory.toAbsolutePath(), segments.size());
+  }
+
+  public void appendPublic(String text) {
+    append(HistoryRecord.publicMessage(text));
+  }
+
+  /**
+   * Сохранение личного сообщения
+   *
+   * @param sender    учетная запись отправителя
+   * @param recipient учетная запись получателя или пустая строка, если она неизвестна
+   * @param text      текст в том виде, в котором он был отправлен клиентам
+   */
+  public void appendPrivate(String sender, String recipient, String text) {
+    append(HistoryRecord.privateMessage(sender, recipient, text));
+  }
+
+  private void append(HistoryRecord record) {
+    if (!pendingRecords.offer(record) && droppedCount.incrementAndGet() == 1) {
+      logger.warn("Очередь записи истории заполнена, сообщения не сохраняются");
+    }
+  }
+
+  /**
+   * Отправка последних сообщений, видимых пользователю, от старых к новым.
+   * Записи читаются из сегментов по одной, сегменты целиком в память не загружаются
+   *
+   * @param accountName имя учетной записи пользователя в БД
+   * @param limit       максимальное количество сообщений
+   * @param consumer    получатель текстов сообщений
+   * @return количество отправленных сообщений
+   */
+  public int readLast(String accountName, int limit, Consumer<String> consumer) {
+    List<HistorySegment> snapshot = new ArrayList<>(segments);
+    int segmentIndex = snapshot.size() - 1;
+    int entry = segmentIndex < 0 ? 0 : snapshot.get(segmentIndex).getCount();
+    int found = 0;
+    while (found < limit && segmentIndex >= 0) {
+      if (entry == 0) {
+        segmentIndex--;
+        if (segmentIndex >= 0) {
+          entry = snapshot.get(segmentIndex).getCount();
+        }
+        continue;
+      }
+      entry--;
+      if (snapshot.get(segmentIndex).read(entry).isVisibleTo(accountName)) {
+        found++;
+      }
+    }
+    if (segmentIndex < 0) {
+      segmentIndex = 0;
+      entry = 0;
+    }
+    int sent = 0;
+    for (; segmentIndex < snapshot.size() && sent < found; segmentIndex++, entry = 0) {
+      HistorySegment segment = snapshot.get(segmentIndex);
+      for (; entry < segment.getCount() && sent < found; entry++) {
+        HistoryRecord record = segment.read(entry);
+        if (record.isVisibleTo(accountName)) {
+          consumer.accept(record.text());
+          sent++;
+        }
+      }
+    }
+    return sent;
+  }
+
+  /**
+   * Количество сообщений, не сохраненных из-за переполнения очереди записи
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  public void close() {
+    isRunning = false;
+    writer.interrupt();
+  }
+
+  private void writeRecords() {
+    long nextRetentionCheck = 0;
+    while (isRunning) {
+      try {
+        HistoryRecord record = pendingRecords.poll(1, TimeUnit.SECONDS);
+        if (record != null) {
+          write(record);
+        }
+        long now = System.currentTimeMillis();
+        if (now >= nextRetentionCheck) {
+          applyRetention(now);
+          nextRetentionCheck = now + RETENTION_CHECK_INTERVAL;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        logger.error("Ошибка при записи истории сообщений", e);
+      }
+    }
+  }
+
+  private void write(HistoryRecord record) throws IOException {
+    byte[] bytes;
+    try {
+      bytes = record.encode();
+    } catch (IllegalArgumentException e) {
+      logger.warn("Сообщение не сохранено в истории: {}", e.getMessage());
+      return;
+    }
+    if (bytes.length > segmentSize) {
+      logger.warn("Сообщение не сохранено в истории: длина больше размера сегмента");
+      return;
+    }
+    long now = System.currentTimeMillis();
+    HistorySegment active = segments.get(segments.size() - 1);
+    if (!active.append(now, bytes)) {
+      active = HistorySegment.open(directory, active.getBaseOffset() + active.getCount(), segmentSize);
+      segments.add(active);
+      active.append(now, bytes);
+      applyRetention(now);
+    }
+  }
+
+  /**
+   * Удаление самых старых сегментов, кроме активного, по времени и общему размеру
+   */
+  private void applyRetention(long now) throws IOException {
+    long totalSize = 0;
+    for (HistorySegment segment : segments) {
+      totalSize += segment.getSizeOnDisk();
+    }
+    while (segments.size() > 1) {
+      HistorySegment oldest = segments.get(0);
+      boolean isExpired = now - oldest.getLastTimestamp() > retentionMillis;
+      if (!isExpired && totalSize <= maxTotalSize) {
+        return;
+      }
+      segments.remove(0);
+      totalSize -= oldest.getSizeOnDisk();
+      oldest.delete();
+      logger.info("Удален сегмент истории {}", oldest.getBaseOffset());
+    }
+  }
+}
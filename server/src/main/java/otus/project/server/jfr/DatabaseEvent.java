@@ -0,0 +1,13 @@
+package otus.project.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("otus.project.server.Database")
+@Label("Запрос к БД")
+@Description("Запрос хранилища пользователей к SQLite")
+@Category({"Console Chat", "Pipeline"})
+@StackTrace(false)
+public class DatabaseEvent extends Event {
+  @Label("Запрос")
+  public String query;
+}
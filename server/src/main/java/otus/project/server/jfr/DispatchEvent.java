@@ -0,0 +1,16 @@
+package otus.project.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("otus.project.server.Dispatch")
+@Label("Обработка сообщения")
+@Description("Разбор команды и ее выполнение, включая рассылку, в потоке клиента")
+@Category({"Console Chat", "Pipeline"})
+@StackTrace(false)
+public class DispatchEvent extends Event {
+  @Label("Пользователь")
+  public String username;
+
+  @Label("Команда")
+  public String command;
+}
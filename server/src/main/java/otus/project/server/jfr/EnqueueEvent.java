@@ -0,0 +1,16 @@
+package otus.project.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("otus.project.server.Enqueue")
+@Label("Постановка в исходящую очередь")
+@Description("Захват блокировки исходящей очереди получателя и добавление сообщения")
+@Category({"Console Chat", "Pipeline"})
+@StackTrace(false)
+public class EnqueueEvent extends Event {
+  @Label("Получатель")
+  public String username;
+
+  @Label("Принято")
+  public boolean isAccepted;
+}
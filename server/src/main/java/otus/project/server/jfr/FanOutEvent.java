@@ -0,0 +1,16 @@
+package otus.project.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("otus.project.server.FanOut")
+@Label("Рассылка")
+@Description("Постановка сообщения в исходящие очереди всех получателей общего чата или комнаты")
+@Category({"Console Chat", "Pipeline"})
+@StackTrace(false)
+public class FanOutEvent extends Event {
+  @Label("Чат или комната")
+  public String scope;
+
+  @Label("Получателей")
+  public int recipients;
+}
@@ -0,0 +1,27 @@
+package otus.project.server.jfr;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выборка событий JFR, которые создаются на каждое сообщение или каждого получателя
+ * (прием, обработка, постановка в очередь, запись в сокет). Проверка выполняется только после
+ * shouldCommit(), поэтому без активной записи JFR выборка ничего не стоит
+ */
+public final class PipelineTracing {
+  private static volatile int sampleInterval = 1;
+
+  private PipelineTracing() {
+  }
+
+  /**
+   * @param interval 1 - каждое событие, N - в среднем одно из N, 0 - не записывать события сообщений
+   */
+  public static void setSampleInterval(int interval) {
+    sampleInterval = Math.max(0, interval);
+  }
+
+  public static boolean isSampled() {
+    int interval = sampleInterval;
+    return interval == 1 || interval > 1 && ThreadLocalRandom.current().nextInt(interval) == 0;
+  }
+}
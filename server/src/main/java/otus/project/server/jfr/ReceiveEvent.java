@@ -0,0 +1,20 @@
+package otus.project.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("otus.project.server.Receive")
+@Label("Прием сообщения")
+@Description("Сообщение клиента полностью прочитано из сокета и передано на обработку")
+@Category({"Console Chat", "Pipeline"})
+@StackTrace(false)
+public class ReceiveEvent extends Event {
+  @Label("Пользователь")
+  public String username;
+
+  @Label("Протокол")
+  public String protocol;
+
+  @Label("Тип кадра")
+  @Description("Тип кадра двоичного протокола, 0 - текстовый протокол")
+  public int messageType;
+}
@@ -0,0 +1,20 @@
+package otus.project.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("otus.project.server.Write")
+@Label("Запись в сокет")
+@Description("Запись пачки сообщений из исходящей очереди одного получателя в сокет")
+@Category({"Console Chat", "Pipeline"})
+@StackTrace(false)
+public class WriteEvent extends Event {
+  @Label("Получатель")
+  public String username;
+
+  @Label("Сообщений")
+  public int frames;
+
+  @Label("Байт")
+  @DataAmount
+  public long bytes;
+}
@@ -0,0 +1,135 @@
+package otus.project.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек в наносекундах с логарифмическими корзинами: каждая степень двойки делится
+ * на 4 корзины, поэтому процентиль завышается не более чем на 25%. Запись - инкремент полосатого счетчика
+ * корзины без блокировок; процентили считаются при чтении по текущим значениям счетчиков
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+  private static final int SUB_BUCKETS = 4;
+  private static final int BUCKETS = 64 * SUB_BUCKETS;
+  private final LongAdder[] buckets;
+  private final LongAdder count;
+  private final LongAdder totalNanos;
+  private final AtomicLong maxNanos;
+
+  public LatencyHistogram() {
+    this.buckets = new LongAdder[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+    this.count = new LongAdder();
+    this.totalNanos = new LongAdder();
+    this.maxNanos = new AtomicLong();
+  }
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    buckets[bucketIndex(nanos)].increment();
+    count.increment();
+    totalNanos.add(nanos);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Запись времени, прошедшего с момента startNanos по System.nanoTime
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * @param percentile процентиль от 0 до 100
+   * @return верхняя граница корзины, в которую попадает процентиль, нс
+   */
+  public long getPercentileNanos(double percentile) {
+    long total = count.sum();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i].sum();
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), maxNanos.get());
+      }
+    }
+    return maxNanos.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  public double getMeanNanos() {
+    long total = count.sum();
+    return total == 0 ? 0 : (double) totalNanos.sum() / total;
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  public double getMeanMicros() {
+    return getMeanNanos() / 1000.0;
+  }
+
+  @Override
+  public double getP50Micros() {
+    return getPercentileNanos(50) / 1000.0;
+  }
+
+  @Override
+  public double getP90Micros() {
+    return getPercentileNanos(90) / 1000.0;
+  }
+
+  @Override
+  public double getP99Micros() {
+    return getPercentileNanos(99) / 1000.0;
+  }
+
+  @Override
+  public double getP999Micros() {
+    return getPercentileNanos(99.9) / 1000.0;
+  }
+
+  @Override
+  public double getMaxMicros() {
+    return maxNanos.get() / 1000.0;
+  }
+
+  /*
+   * Значения меньше 4 попадают в корзины 0-3 как есть. Для остальных корзина определяется
+   * номером старшего бита и двумя следующими за ним битами
+   */
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int mantissa = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+    return (exponent - 1) * SUB_BUCKETS + mantissa;
+  }
+
+  private static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + 1;
+    int mantissa = index % SUB_BUCKETS;
+    long lower = (long) (SUB_BUCKETS + mantissa) << (exponent - 2);
+    return lower + (1L << (exponent - 2)) - 1;
+  }
+}
@@ -0,0 +1,20 @@
+package otus.project.server.metrics;
+
+/**
+ * Гистограмма задержек в JMX, значения в микросекундах
+ */
+public interface LatencyHistogramMXBean {
+  long getCount();
+
+  double getMeanMicros();
+
+  double getP50Micros();
+
+  double getP90Micros();
+
+  double getP99Micros();
+
+  double getP999Micros();
+
+  double getMaxMicros();
+}
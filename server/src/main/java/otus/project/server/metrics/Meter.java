@@ -0,0 +1,59 @@
+package otus.project.server.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчик событий со скоростью за последнюю минуту (экспоненциальное скользящее среднее с шагом 5 секунд).
+ * Запись - только инкремент полосатого LongAdder; среднее пересчитывается при чтении скорости
+ * за все шаги, прошедшие с предыдущего чтения
+ */
+public class Meter {
+  private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+  private static final double ALPHA = 1 - Math.exp(-5.0 / 60.0);
+  private final LongAdder count;
+  private long lastTickNanos;
+  private long lastTickCount;
+  private double rate;
+  private boolean isInitialized;
+
+  public Meter() {
+    this.count = new LongAdder();
+    this.lastTickNanos = System.nanoTime();
+  }
+
+  public void mark() {
+    count.increment();
+  }
+
+  public void mark(long n) {
+    count.add(n);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return событий в секунду за последнюю минуту
+   */
+  public synchronized double getRate() {
+    long now = System.nanoTime();
+    long ticks = (now - lastTickNanos) / TICK_NANOS;
+    if (ticks > 0) {
+      long currentCount = count.sum();
+      double instantRate = (currentCount - lastTickCount) / (ticks * (TICK_NANOS / 1e9));
+      for (long i = 0; i < ticks; i++) {
+        if (isInitialized) {
+          rate += ALPHA * (instantRate - rate);
+        } else {
+          rate = instantRate;
+          isInitialized = true;
+        }
+      }
+      lastTickCount = currentCount;
+      lastTickNanos += ticks * TICK_NANOS;
+    }
+    return rate;
+  }
+}